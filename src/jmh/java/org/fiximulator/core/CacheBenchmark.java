@@ -0,0 +1,91 @@
+/*
+ * File     : CacheBenchmark.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Benchmarks adding to and looking up in the OrderSet and
+ *            ExecutionSet with full caches of different sizes.  The
+ *            cached orders are filled, so each add also evicts one.
+ *
+ */
+
+package org.fiximulator.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import quickfix.field.OrdStatus;
+
+@State(Scope.Benchmark)
+public class CacheBenchmark {
+    @Param({"50", "1000", "100000", "1000000"})
+    public int size;
+
+    private OrderSet orders;
+    private ExecutionSet executions;
+    private String[] clientIDs;
+    private String[] executionIDs;
+    private Order order;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        orders = new OrderSet();
+        orders.setFixedLimit(size);
+        executions = new ExecutionSet();
+        executions.setFixedLimit(size);
+        clientIDs = new String[size];
+        executionIDs = new String[size];
+        for (int i = 0; i < size; i++) {
+            Order order = newOrder("C" + i);
+            orders.add(order, false);
+            Execution execution = new Execution(order);
+            executions.add(execution);
+            clientIDs[i] = order.getClientID();
+            executionIDs[i] = execution.getID();
+        }
+        order = orders.getOrder(0);
+    }
+
+    @Benchmark
+    public Order addOrder() {
+        Order order = newOrder("N" + next++);
+        orders.add(order, false);
+        return order;
+    }
+
+    @Benchmark
+    public Order getOrderByClientID() {
+        return orders.getOrder(clientIDs[next++ % size]);
+    }
+
+    @Benchmark
+    public Order getOrderByRow() {
+        return orders.getOrder(next++ % size);
+    }
+
+    @Benchmark
+    public Execution addExecution() {
+        Execution execution = new Execution(order);
+        executions.add(execution);
+        return execution;
+    }
+
+    @Benchmark
+    public Execution getExecutionByID() {
+        return executions.getExecution(executionIDs[next++ % size]);
+    }
+
+    private static Order newOrder(String clientID) {
+        Order order = new Order();
+        order.setClientID(clientID);
+        order.setSymbol("IBM");
+        order.setQuantity(100);
+        order.setExecuted(100);
+        order.setStatus(OrdStatus.FILLED);
+        return order;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * File     : EchoBenchmark.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Benchmarks the work echo mode does on the session thread
+ *            for one round trip, building and encoding the ack and the
+ *            fill for a NewOrderSingle.  The throughput is the number
+ *            of round trips per second the simulator can answer before
+ *            the session's own I/O.
+ *
+ */
+
+package org.fiximulator.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import quickfix.FieldNotFound;
+import quickfix.SessionSettings;
+import quickfix.fix42.NewOrderSingle;
+
+@State(Scope.Benchmark)
+public class EchoBenchmark {
+    private FIXimulatorApplication application;
+    private NewOrderSingle message;
+    private long nextID = 0;
+
+    @Setup
+    public void setUp() {
+        application = new FIXimulatorApplication(
+                new SessionSettings(), new LogMessageSet());
+        message = OrderBenchmark.newOrderSingle("C1", "IBM");
+    }
+
+    @Benchmark
+    public int roundTrip() throws FieldNotFound {
+        String orderID = "E" + (++nextID);
+        return application.buildEchoReport(message, orderID, false)
+                .toString().length()
+               + application.buildEchoReport(message, orderID, true)
+                .toString().length();
+    }
+}
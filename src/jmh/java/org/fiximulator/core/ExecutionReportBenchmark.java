@@ -0,0 +1,64 @@
+/*
+ * File     : ExecutionReportBenchmark.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Benchmarks building an ExecutionReport for a fill, the
+ *            work sendExecution does before the message is handed to
+ *            the session, and encoding it to FIX.
+ *
+ */
+
+package org.fiximulator.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import quickfix.SessionSettings;
+import quickfix.field.ExecTransType;
+import quickfix.field.ExecType;
+import quickfix.field.OrdStatus;
+import quickfix.fix42.ExecutionReport;
+
+@State(Scope.Benchmark)
+public class ExecutionReportBenchmark {
+    private FIXimulatorApplication application;
+    private Execution execution;
+
+    @Setup
+    public void setUp() {
+        application = new FIXimulatorApplication(
+                new SessionSettings(), new LogMessageSet());
+        Order order = new Order(OrderBenchmark.newOrderSingle("C1", "IBM"));
+        order.setStatus(OrdStatus.PARTIALLY_FILLED);
+        order.setOpen(600);
+        order.setExecuted(400);
+        order.setAvgPx(101.20);
+        execution = new Execution(order);
+        execution.setExecType(ExecType.PARTIAL_FILL);
+        execution.setExecTranType(ExecTransType.NEW);
+        execution.setLastShares(100);
+        execution.setLastPx(101.25);
+        execution.setLeavesQty(600);
+        execution.setCumQty(400);
+        execution.setAvgPx(101.20);
+    }
+
+    @Benchmark
+    public ExecutionReport buildExecutionReport() {
+        return application.buildExecutionReport(execution);
+    }
+
+    @Benchmark
+    public String encodeExecutionReport() {
+        return application.buildExecutionReport(execution).toString();
+    }
+
+    // A typical fill report for the other benchmarks to work with
+    String report() {
+        setUp();
+        return encodeExecutionReport();
+    }
+}
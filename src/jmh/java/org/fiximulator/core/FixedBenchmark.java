@@ -0,0 +1,71 @@
+/*
+ * File     : FixedBenchmark.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Benchmarks working a 10000 share order through 100
+ *            partials the way Executor.fill does, with the old double
+ *            arithmetic and with Fixed.  The double version returns
+ *            how far CumQty plus LeavesQty ends up from OrderQty.  The
+ *            Fixed version keeps the AvgPx at full precision on the
+ *            order and only rounds the reported one, as sendFill does.
+ *
+ */
+
+package org.fiximulator.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+public class FixedBenchmark {
+    private static final int PARTIALS = 100;
+    private static final int PRICE_PRECISION = 4;
+    private double quantity = 10000.37;
+    private double[] prices = new double[PARTIALS];
+
+    public FixedBenchmark() {
+        for (int i = 0; i < PARTIALS; i++) {
+            prices[i] = 101.2345 + i * 0.0017;
+        }
+    }
+
+    @Benchmark
+    public double doubleFill() {
+        double fillQty = Math.floor(quantity / PARTIALS);
+        double open = quantity;
+        double executed = 0;
+        double avgPx = 0;
+        for (int i = 0; i < PARTIALS; i++) {
+            double thisQty = i == PARTIALS - 1 ? open : fillQty;
+            double thisAvg = ((thisQty * prices[i]) + (executed * avgPx))
+                             / (executed + thisQty);
+            double factor = Math.pow(10, PRICE_PRECISION);
+            avgPx = Math.round(thisAvg * factor) / factor;
+            open -= thisQty;
+            executed += thisQty;
+        }
+        return executed + open - quantity;
+    }
+
+    @Benchmark
+    public long fixedFill(Blackhole blackhole) {
+        long orderQty = Fixed.qty(quantity);
+        long fillQty = Fixed.wholeShares(orderQty / PARTIALS);
+        long open = orderQty;
+        long executed = 0;
+        long avgPx = 0;
+        for (int i = 0; i < PARTIALS; i++) {
+            long thisQty = i == PARTIALS - 1 ? open : fillQty;
+            // through the double on Order, as sendFill
+            avgPx = Fixed.price(Fixed.toPrice(Fixed.avgPx(executed, avgPx,
+                    thisQty, Fixed.price(prices[i]))));
+            blackhole.consume(Fixed.round(avgPx, PRICE_PRECISION));
+            open -= thisQty;
+            executed += thisQty;
+        }
+        return executed + open - orderQty;
+    }
+}
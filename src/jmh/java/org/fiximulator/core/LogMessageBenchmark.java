@@ -0,0 +1,48 @@
+/*
+ * File     : LogMessageBenchmark.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Benchmarks capturing a message for the message table and
+ *            breaking it into fields for the detail table.
+ *
+ */
+
+package org.fiximulator.core;
+
+import org.fiximulator.util.LogField;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import quickfix.DataDictionary;
+import quickfix.SessionID;
+
+import java.util.List;
+
+@State(Scope.Benchmark)
+public class LogMessageBenchmark {
+    private DataDictionary dictionary;
+    private SessionID sessionID;
+    private String raw;
+    private LogMessage message;
+
+    @Setup
+    public void setUp() throws Exception {
+        dictionary = new DataDictionary("FIX42.xml");
+        sessionID = new SessionID("FIX.4.2", "FIXIMULATOR", "CLIENT");
+        raw = OrderBenchmark.newOrderSingle("C1", "IBM").toString();
+        message = new LogMessage(1, true, sessionID, raw, dictionary);
+    }
+
+    @Benchmark
+    public LogMessage createLogMessage() {
+        return new LogMessage(1, true, sessionID, raw, dictionary);
+    }
+
+    @Benchmark
+    public List<LogField> getLogFields() {
+        return message.getLogFields();
+    }
+}
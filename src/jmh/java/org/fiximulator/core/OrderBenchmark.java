@@ -0,0 +1,62 @@
+/*
+ * File     : OrderBenchmark.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Benchmarks decoding an incoming NewOrderSingle into an
+ *            Order.
+ *
+ */
+
+package org.fiximulator.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import quickfix.field.ClOrdID;
+import quickfix.field.HandlInst;
+import quickfix.field.IDSource;
+import quickfix.field.OrdType;
+import quickfix.field.OrderQty;
+import quickfix.field.Price;
+import quickfix.field.SecurityID;
+import quickfix.field.Side;
+import quickfix.field.Symbol;
+import quickfix.field.TimeInForce;
+import quickfix.field.TransactTime;
+import quickfix.fix42.NewOrderSingle;
+
+import java.util.Date;
+
+@State(Scope.Benchmark)
+public class OrderBenchmark {
+    private NewOrderSingle message;
+
+    @Setup
+    public void setUp() {
+        message = newOrderSingle("C1", "IBM");
+    }
+
+    @Benchmark
+    public Order decodeNewOrderSingle() {
+        return new Order(message);
+    }
+
+    static NewOrderSingle newOrderSingle(String clOrdID, String symbol) {
+        NewOrderSingle message = new NewOrderSingle(
+                new ClOrdID(clOrdID),
+                new HandlInst(HandlInst.AUTOMATED_EXECUTION_ORDER_PRIVATE_NO_BROKER_INTERVENTION),
+                new Symbol(symbol),
+                new Side(Side.BUY),
+                new TransactTime(new Date()),
+                new OrdType(OrdType.LIMIT));
+        message.set(new OrderQty(1000));
+        message.set(new Price(101.25));
+        message.set(new TimeInForce(TimeInForce.DAY));
+        message.set(new SecurityID("459200101"));
+        message.set(new IDSource(IDSource.CUSIP));
+        return message;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * File     : StoreResendBenchmark.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Benchmarks reading a range of stored messages back for a
+ *            resend from the QuickFIX/J FileStore and the MappedStore.
+ *
+ */
+
+package org.fiximulator.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import quickfix.FileStoreFactory;
+import quickfix.MessageStore;
+import quickfix.SessionID;
+import quickfix.SessionSettings;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+@State(Scope.Benchmark)
+public class StoreResendBenchmark {
+    @Param({"1000", "10000", "50000"})
+    public int messages;
+
+    private MessageStore fileStore;
+    private MappedStore mappedStore;
+
+    @Setup
+    public void setUp() throws Exception {
+        File directory = Files.createTempDirectory("store").toFile();
+        SessionID sessionID = new SessionID("FIX.4.2", "FIXIMULATOR", "CLIENT");
+        SessionSettings settings = new SessionSettings();
+        settings.setString(sessionID, "FileStorePath",
+                new File(directory, "file").getPath());
+        fileStore = new FileStoreFactory(settings).create(sessionID);
+        mappedStore = new MappedStore(new File(directory, "mapped"),
+                "FIX.4.2-FIXIMULATOR-CLIENT", 16 * 1024 * 1024);
+        String report = new ExecutionReportBenchmark().report();
+        for (int sequence = 1; sequence <= messages; sequence++) {
+            fileStore.set(sequence, report);
+            mappedStore.set(sequence, report);
+        }
+    }
+
+    @Benchmark
+    public List<String> fileStoreResend() throws Exception {
+        List<String> resend = new ArrayList<String>(messages);
+        fileStore.get(1, messages, resend);
+        return resend;
+    }
+
+    @Benchmark
+    public List<String> mappedStoreResend() throws Exception {
+        List<String> resend = new ArrayList<String>(messages);
+        mappedStore.get(1, messages, resend);
+        return resend;
+    }
+
+    @Benchmark
+    public List<ByteBuffer> mappedStoreSlices() {
+        List<ByteBuffer> resend = new ArrayList<ByteBuffer>(messages);
+        mappedStore.getSlices(1, messages, resend);
+        return resend;
+    }
+}
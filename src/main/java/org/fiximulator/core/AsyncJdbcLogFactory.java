@@ -0,0 +1,284 @@
+/*
+ * File     : AsyncJdbcLogFactory.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : This class is a LogFactory that writes the same tables as
+ *            the QuickFIX/J JdbcLog, but from a background thread.  The
+ *            session threads only place records on a bounded queue
+ *            which is written out with multi-row inserts, flushed when
+ *            a batch fills up or the flush interval runs out.  The
+ *            writer holds a connection from the shared ConnectionPool.
+ *
+ */
+
+package org.fiximulator.core;
+
+import quickfix.Log;
+import quickfix.LogFactory;
+import quickfix.SessionID;
+import quickfix.SessionSettings;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AsyncJdbcLogFactory implements LogFactory, Runnable {
+    private static final String COLUMNS =
+            "(time, beginstring, sendercompid, sendersubid, senderlocid, "
+            + "targetcompid, targetsubid, targetlocid, session_qualifier, "
+            + "text)";
+    private static final String ROW = "(?,?,?,?,?,?,?,?,?,?)";
+
+    private SessionSettings settings;
+    private String incomingTable = "messages_log";
+    private String outgoingTable = "messages_log";
+    private String eventTable = "event_log";
+    private int batchSize = 100;
+    private long flushInterval = 1000;
+    private int queueSize = 10000;
+
+    private BlockingQueue<LogRecord> queue;
+    private Thread writerThread;
+    private volatile boolean running = false;
+    private AtomicLong written = new AtomicLong();
+    private AtomicLong dropped = new AtomicLong();
+    private Connection connection = null;
+    private Map<String, PreparedStatement> statements =
+            new HashMap<String, PreparedStatement>();
+
+    public AsyncJdbcLogFactory(SessionSettings settings) {
+        this.settings = settings;
+        try {
+            incomingTable = settings.getString("JdbcLogIncomingTable");
+        } catch (Exception e) {}
+        try {
+            outgoingTable = settings.getString("JdbcLogOutgoingTable");
+        } catch (Exception e) {}
+        try {
+            eventTable = settings.getString("JdbcLogEventTable");
+        } catch (Exception e) {}
+        try {
+            batchSize = (int)settings.getLong("FIXimulatorLogBatchSize");
+        } catch (Exception e) {}
+        try {
+            flushInterval = settings.getLong("FIXimulatorLogFlushInterval");
+        } catch (Exception e) {}
+        try {
+            queueSize = (int)settings.getLong("FIXimulatorLogQueueSize");
+        } catch (Exception e) {}
+        queue = new ArrayBlockingQueue<LogRecord>(queueSize);
+        start();
+    }
+
+    public Log create(SessionID sessionID) {
+        return new AsyncJdbcLog(sessionID);
+    }
+
+    public Log create() {
+        return new AsyncJdbcLog(null);
+    }
+
+    public void start() {
+        running = true;
+        writerThread = new Thread(this, "FIXimulator-DBLog");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                stop();
+            }
+        });
+    }
+
+    public void stop() {
+        if (!running) return;
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {}
+    }
+
+    // Records waiting to be written
+    public int getBacklog() {
+        return queue.size();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    // Records discarded because the queue was full or the insert failed
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public void run() {
+        List<LogRecord> batch = new ArrayList<LogRecord>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                LogRecord first = queue.poll(flushInterval,
+                        TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + flushInterval;
+                while (batch.size() < batchSize) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0 || !running) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        break;
+                    }
+                    LogRecord next = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // stopping, drain what is left
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+        closeConnection();
+    }
+
+    private void offer(LogRecord record) {
+        if (!queue.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void write(List<LogRecord> batch) {
+        Map<String, List<LogRecord>> tables =
+                new HashMap<String, List<LogRecord>>();
+        for (LogRecord record : batch) {
+            List<LogRecord> rows = tables.get(record.table);
+            if (rows == null) {
+                rows = new ArrayList<LogRecord>();
+                tables.put(record.table, rows);
+            }
+            rows.add(record);
+        }
+        for (Map.Entry<String, List<LogRecord>> table : tables.entrySet()) {
+            List<LogRecord> rows = table.getValue();
+            try {
+                PreparedStatement insert = getInsert(table.getKey(), rows.size());
+                int parameter = 1;
+                for (LogRecord row : rows) {
+                    insert.setTimestamp(parameter++, row.time);
+                    insert.setString(parameter++, row.beginString);
+                    insert.setString(parameter++, row.senderCompID);
+                    insert.setString(parameter++, "");
+                    insert.setString(parameter++, "");
+                    insert.setString(parameter++, row.targetCompID);
+                    insert.setString(parameter++, "");
+                    insert.setString(parameter++, "");
+                    insert.setString(parameter++, "");
+                    insert.setString(parameter++, row.text);
+                }
+                insert.executeUpdate();
+                written.addAndGet(rows.size());
+            } catch (SQLException e) {
+                e.printStackTrace();
+                dropped.addAndGet(rows.size());
+                closeConnection();
+            }
+        }
+    }
+
+    /*
+     * Statements are cached per table and row count, so steady traffic
+     * keeps reusing the full batch statement.
+     */
+    private PreparedStatement getInsert(String table, int rows)
+            throws SQLException {
+        if (connection == null) {
+            connection = ConnectionPool.getConnection(settings);
+        }
+        String key = table + ":" + rows;
+        PreparedStatement statement = statements.get(key);
+        if (statement == null) {
+            StringBuilder sql = new StringBuilder("INSERT INTO ")
+                    .append(table).append(' ').append(COLUMNS)
+                    .append(" VALUES ").append(ROW);
+            for (int i = 1; i < rows; i++) {
+                sql.append(',').append(ROW);
+            }
+            statement = connection.prepareStatement(sql.toString());
+            statements.put(key, statement);
+        } else {
+            statement.clearParameters();
+        }
+        return statement;
+    }
+
+    private void closeConnection() {
+        statements.clear();
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {}
+            connection = null;
+        }
+    }
+
+    private static class LogRecord {
+        private final String table;
+        private final Timestamp time;
+        private final String beginString;
+        private final String senderCompID;
+        private final String targetCompID;
+        private final String text;
+
+        LogRecord(String table, SessionID sessionID, String text) {
+            this.table = table;
+            this.time = new Timestamp(System.currentTimeMillis());
+            this.beginString =
+                    sessionID == null ? "" : sessionID.getBeginString();
+            this.senderCompID =
+                    sessionID == null ? "" : sessionID.getSenderCompID();
+            this.targetCompID =
+                    sessionID == null ? "" : sessionID.getTargetCompID();
+            this.text = text;
+        }
+    }
+
+    private class AsyncJdbcLog implements Log {
+        private final SessionID sessionID;
+
+        AsyncJdbcLog(SessionID sessionID) {
+            this.sessionID = sessionID;
+        }
+
+        public void onIncoming(String message) {
+            offer(new LogRecord(incomingTable, sessionID, message));
+        }
+
+        public void onOutgoing(String message) {
+            offer(new LogRecord(outgoingTable, sessionID, message));
+        }
+
+        public void onEvent(String text) {
+            offer(new LogRecord(eventTable, sessionID, text));
+        }
+
+        public void onErrorEvent(String text) {
+            offer(new LogRecord(eventTable, sessionID, text));
+        }
+
+        public void clear() {}
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * File     : CacheBudget.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : This class is a heap budget shared by the order, execution
+ *            and message caches.  Each set charges the estimated size of
+ *            what it adds, and when the total runs over the budget the
+ *            largest cache is asked to evict its oldest entries first.
+ *            An order evicted from the OrderSet stays on the heap while
+ *            cached executions still refer to it, so its size is kept
+ *            as pinned until the last of those executions is evicted.
+ *
+ *            Locks are always taken budget first, then set, so the sets
+ *            charge the budget only after releasing their own lock.
+ *
+ */
+
+package org.fiximulator.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CacheBudget {
+    public interface Evictable {
+        /*
+         * Evicts the oldest entries that can go until at least the
+         * given number of bytes is freed, and returns the bytes taken
+         * off its own account.
+         */
+        long evict(long bytes);
+    }
+
+    private final long limit;
+    private Map<Evictable, Member> members =
+            new LinkedHashMap<Evictable, Member>();
+    private Map<Order, Pin> pins = new IdentityHashMap<Order, Pin>();
+    private long used = 0;
+    private long pinned = 0;
+
+    public CacheBudget(long limit) {
+        this.limit = limit;
+    }
+
+    public synchronized void register(String name, Evictable evictable) {
+        members.put(evictable, new Member(name));
+    }
+
+    public synchronized void charge(Evictable evictable, long bytes) {
+        members.get(evictable).used += bytes;
+        used += bytes;
+        enforce();
+    }
+
+    /*
+     * Called by a set for each entry it evicts or otherwise drops from
+     * its own accounting.
+     */
+    public synchronized void release(Evictable evictable, long bytes) {
+        members.get(evictable).used -= bytes;
+        used -= bytes;
+    }
+
+    // An execution refers to the order
+    public synchronized void pin(Order order) {
+        Pin pin = pins.get(order);
+        if (pin == null) {
+            pin = new Pin();
+            pins.put(order, pin);
+        }
+        pin.count++;
+    }
+
+    // An execution that referred to the order was evicted
+    public synchronized void unpin(Order order) {
+        Pin pin = pins.get(order);
+        if (pin == null) return;
+        if (--pin.count == 0) {
+            pins.remove(order);
+            pinned -= pin.bytes;
+            used -= pin.bytes;
+        }
+    }
+
+    /*
+     * The OrderSet evicted the order; if executions still hold it, its
+     * bytes move from the OrderSet to the pinned total instead of being
+     * freed.  Returns whether the order is pinned.
+     */
+    public synchronized boolean evicted(Evictable evictable, Order order,
+            long bytes) {
+        members.get(evictable).used -= bytes;
+        Pin pin = pins.get(order);
+        if (pin == null) {
+            used -= bytes;
+            return false;
+        }
+        pin.bytes += bytes;
+        pinned += bytes;
+        return true;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    public synchronized long getPinned() {
+        return pinned;
+    }
+
+    public synchronized long getUsed(String name) {
+        for (Member member : members.values()) {
+            if (member.name.equals(name)) return member.used;
+        }
+        return 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder text = new StringBuilder("Cache ")
+                .append(megabytes(used)).append(" / ")
+                .append(megabytes(limit)).append(" MB (");
+        for (Member member : members.values()) {
+            text.append(member.name).append(' ')
+                .append(megabytes(member.used)).append(", ");
+        }
+        return text.append("pinned ").append(megabytes(pinned))
+                   .append(')').toString();
+    }
+
+    private void enforce() {
+        while (used > limit) {
+            List<Map.Entry<Evictable, Member>> order =
+                    new ArrayList<Map.Entry<Evictable, Member>>(
+                            members.entrySet());
+            // largest cache first
+            Collections.sort(order,
+                    new Comparator<Map.Entry<Evictable, Member>>() {
+                public int compare(Map.Entry<Evictable, Member> a,
+                        Map.Entry<Evictable, Member> b) {
+                    return Long.compare(b.getValue().used, a.getValue().used);
+                }
+            });
+            boolean evicted = false;
+            for (Map.Entry<Evictable, Member> entry : order) {
+                if (entry.getKey().evict(used - limit) > 0) {
+                    evicted = true;
+                    break;
+                }
+            }
+            // nothing left that can go
+            if (!evicted) break;
+        }
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.1f", bytes / (1024.0 * 1024.0));
+    }
+
+    private static class Member {
+        private final String name;
+        private long used = 0;
+
+        Member(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Pin {
+        private int count = 0;
+        private long bytes = 0;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * File     : ConnectionPool.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : This class holds the Proxool connection pool that is
+ *            shared by the reports and the database log.  The pool is
+ *            registered from the Jdbc settings the first time a
+ *            connection is requested.
+ *
+ */
+
+package org.fiximulator.core;
+
+import org.logicalcobwebs.proxool.ProxoolFacade;
+import quickfix.SessionSettings;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+public class ConnectionPool {
+    private static final String ALIAS = "fiximulator";
+    private static final String PROXOOL_DRIVER =
+            "org.logicalcobwebs.proxool.ProxoolDriver";
+    private static boolean registered = false;
+
+    private ConnectionPool() {}
+
+    /*
+     * Connections are returned to the pool when they are closed.
+     */
+    public static Connection getConnection(SessionSettings settings)
+            throws SQLException {
+        register(settings);
+        return DriverManager.getConnection("proxool." + ALIAS);
+    }
+
+    private static synchronized void register(SessionSettings settings)
+            throws SQLException {
+        if (registered) return;
+        String url = null;
+        String driver = null;
+        String user = null;
+        String pass = null;
+        try {
+            url = settings.getString("JdbcURL");
+            driver = settings.getString("JdbcDriver");
+            user = settings.getString("JdbcUser");
+            pass = settings.getString("JdbcPassword");
+        } catch (Exception e) {
+            throw new SQLException("The Jdbc settings are incomplete");
+        }
+        long maximum = 5;
+        try {
+            maximum = settings.getLong("FIXimulatorPoolMaxConnections");
+        } catch (Exception e) {}
+
+        Properties info = new Properties();
+        info.setProperty("proxool.minimum-connection-count", "1");
+        info.setProperty("proxool.maximum-connection-count",
+                String.valueOf(maximum));
+        info.setProperty("user", user);
+        info.setProperty("password", pass);
+        // Properties without the proxool prefix go to the real driver;
+        // these let Connector/J keep the report statements prepared
+        // on each pooled connection and honour the report fetch size.
+        info.setProperty("cachePrepStmts", "true");
+        info.setProperty("useServerPrepStmts", "true");
+        info.setProperty("prepStmtCacheSize", "50");
+        info.setProperty("useCursorFetch", "true");
+        try {
+            Class.forName(PROXOOL_DRIVER);
+            ProxoolFacade.registerConnectionPool(
+                    "proxool." + ALIAS + ":" + driver + ":" + url, info);
+            registered = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new SQLException("Could not initialize the database pool.");
+        }
+    }
+}
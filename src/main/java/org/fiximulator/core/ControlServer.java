@@ -0,0 +1,460 @@
+/*
+ * File     : ControlServer.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : A small HTTP endpoint so the simulator can be scraped and
+ *            driven without the GUI.  It serves:
+ *
+ *            GET  /metrics                      Prometheus text format
+ *            GET  /orders                       cached orders as JSON
+ *            GET  /executions                   cached executions as JSON
+ *            GET  /positions                    positions by symbol and side
+ *            POST /executor/start?delay=&partials=
+ *            POST /executor/stop
+ *            POST /executor/delay?value=        ms, fractions allowed
+ *            POST /executor/rate?value=[&spin=] fills per second
+ *            POST /executor/partials?value=
+ *            POST /order/ack?id=
+ *            POST /order/fill?id=&px=[&qty=]    qty up to the open,
+ *                                               409 once the order is done
+ *            POST /order/cancel?id=
+ *            POST /endofday                     Day orders done for day
+ *
+ *            Orders are looked up by ClOrdID or by the simulator's own
+ *            order ID.  The server listens on FIXimulatorHttpAddress,
+ *            the loopback address unless configured otherwise.
+ *
+ */
+
+package org.fiximulator.core;
+
+import com.sofi.quotes.QuoteService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+public class ControlServer implements HttpHandler {
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final FIXimulatorApplication application;
+    private final QuoteService quoteService;
+    private HttpServer server;
+
+    public ControlServer(FIXimulatorApplication application,
+            QuoteService quoteService) {
+        this.application = application;
+        this.quoteService = quoteService;
+    }
+
+    /*
+     * Starts a server when FIXimulatorHttpPort is set, returns null
+     * otherwise.
+     */
+    public static ControlServer start(FIXimulatorApplication application,
+            QuoteService quoteService) {
+        int port = 0;
+        String address = "127.0.0.1";
+        try {
+            port = (int)application.getSettings().getLong("FIXimulatorHttpPort");
+        } catch (Exception e) {}
+        if (port == 0) return null;
+        try {
+            address = application.getSettings()
+                    .getString("FIXimulatorHttpAddress");
+        } catch (Exception e) {}
+        ControlServer controlServer =
+                new ControlServer(application, quoteService);
+        try {
+            controlServer.server = HttpServer.create(
+                    new InetSocketAddress(address, port), 0);
+            controlServer.server.createContext("/", controlServer);
+            controlServer.server.setExecutor(
+                    Executors.newSingleThreadExecutor());
+            controlServer.server.start();
+            System.out.println("Control endpoint listening on "
+                    + address + ":" + port);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return controlServer;
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> query =
+                parseQuery(exchange.getRequestURI().getRawQuery());
+        boolean post = exchange.getRequestMethod().equalsIgnoreCase("POST");
+        try {
+            if (path.equals("/metrics")) {
+                respond(exchange, 200, "text/plain; version=0.0.4",
+                        metrics());
+            } else if (path.equals("/orders")) {
+                respond(exchange, 200, "application/json",
+                        ordersJson(application.getOrders().getSnapshot()));
+            } else if (path.equals("/executions")) {
+                respond(exchange, 200, "application/json", executionsJson(
+                        application.getExecutions().getSnapshot()));
+            } else if (path.equals("/positions")) {
+                respond(exchange, 200, "application/json", positionsJson(
+                        application.getPositions().getPositions()));
+            } else if (!post) {
+                respond(exchange, 404, "text/plain", "Not found\n");
+            } else if (path.startsWith("/executor/")) {
+                respond(exchange, 200, "text/plain",
+                        executor(path.substring(10), query));
+            } else if (path.startsWith("/order/")) {
+                order(exchange, path.substring(7), query);
+            } else if (path.equals("/endofday")) {
+                application.endOfDay();
+                respond(exchange, 200, "text/plain", "Done for day\n");
+            } else {
+                respond(exchange, 404, "text/plain", "Not found\n");
+            }
+        } catch (RuntimeException e) {
+            respond(exchange, 400, "text/plain", e.getMessage() + "\n");
+        }
+    }
+
+    private String executor(String verb, Map<String, String> query) {
+        if (verb.equals("start")) {
+            if (application.isExecutorStarted()) return "Already started\n";
+            long delay = microsParameter(query, "delay", 1);
+            int partials = Math.max(1, intParameter(query, "partials", 1));
+            application.startExecutor(delay, partials, quoteService);
+            return "Started\n";
+        }
+        if (verb.equals("stop")) {
+            if (!application.isExecutorStarted()) return "Not started\n";
+            application.stopExecutor();
+            return "Stopped\n";
+        }
+        if (verb.equals("delay")) {
+            application.setNewExecutorDelay(
+                    microsParameter(query, "value", 1));
+            return "Delay changed\n";
+        }
+        if (verb.equals("rate")) {
+            Pacer pacer = application.getPacer();
+            String value = query.get("value");
+            pacer.setRate(value == null ? 0 : Double.parseDouble(value));
+            if (query.containsKey("spin")) {
+                pacer.setSpin(Boolean.parseBoolean(query.get("spin")));
+            }
+            return "Rate changed\n";
+        }
+        if (verb.equals("partials")) {
+            application.setNewExecutorPartials(
+                    Math.max(1, intParameter(query, "value", 1)));
+            return "Partials changed\n";
+        }
+        throw new IllegalArgumentException("Unknown executor verb " + verb);
+    }
+
+    private void order(HttpExchange exchange, String verb,
+            Map<String, String> query) throws IOException {
+        String id = query.get("id");
+        Order order = id == null ? null : application.getOrders().getOrder(id);
+        if (order == null) {
+            respond(exchange, 404, "text/plain", "Unknown order " + id + "\n");
+            return;
+        }
+        if (verb.equals("ack")) {
+            if (!order.getStatus().equals("Received")
+                    && !order.getStatus().equals("Pending New")) {
+                respond(exchange, 409, "text/plain", "Order in status \""
+                        + order.getStatus() + "\" cannot be acknowledged\n");
+                return;
+            }
+            application.acknowledge(order);
+        } else if (verb.equals("fill")) {
+            if (order.isDone()) {
+                respond(exchange, 409, "text/plain", "Order in status \""
+                        + order.getStatus() + "\" cannot be filled\n");
+                return;
+            }
+            if (!query.containsKey("px")) {
+                throw new IllegalArgumentException("px is required");
+            }
+            double qty = query.containsKey("qty")
+                    ? Double.parseDouble(query.get("qty")) : order.getOpen();
+            double px = Double.parseDouble(query.get("px"));
+            // compared at the scale the fill is booked at
+            if (!(qty > 0) || Fixed.qty(qty) <= 0
+                    || Fixed.qty(qty) > Fixed.qty(order.getOpen())) {
+                throw new IllegalArgumentException("qty must be above 0 and"
+                        + " at most the open " + order.getOpen());
+            }
+            if (!(px > 0) || Double.isInfinite(px) || Fixed.price(px) <= 0) {
+                throw new IllegalArgumentException("px must be above 0");
+            }
+            Execution execution = new Execution(order);
+            execution.setLastShares(qty);
+            execution.setLastPx(px);
+            application.execute(execution);
+        } else if (verb.equals("cancel")) {
+            application.cancel(order);
+        } else {
+            throw new IllegalArgumentException("Unknown order verb " + verb);
+        }
+        respond(exchange, 200, "application/json", orderJson(order) + "\n");
+    }
+
+    private String metrics() {
+        SimulatorMetrics metrics = application.getMetrics();
+        StringBuilder out = new StringBuilder();
+        counters(out, "fiximulator_messages_in_total", "msg_type",
+                metrics.getMessagesIn());
+        counters(out, "fiximulator_messages_out_total", "msg_type",
+                metrics.getMessagesOut());
+        out.append("# TYPE fiximulator_executions_sent_total counter\n")
+           .append("fiximulator_executions_sent_total ")
+           .append(metrics.getExecutionsSent()).append('\n');
+        gauges(out, "fiximulator_orders", "status",
+                metrics.getOrdersByStatus());
+        out.append("# TYPE fiximulator_executor_queue_depth gauge\n")
+           .append("fiximulator_executor_queue_depth ")
+           .append(metrics.getExecutorQueueDepth()).append('\n');
+        out.append("# TYPE fiximulator_fill_rate_requested gauge\n")
+           .append("fiximulator_fill_rate_requested ")
+           .append(metrics.getFillRateRequested()).append('\n');
+        out.append("# TYPE fiximulator_fill_rate_actual gauge\n")
+           .append("fiximulator_fill_rate_actual ")
+           .append(metrics.getFillRateActual()).append('\n');
+        out.append("# TYPE fiximulator_scheduled_orders gauge\n")
+           .append("fiximulator_scheduled_orders ")
+           .append(metrics.getScheduledOrders()).append('\n');
+        out.append("# TYPE fiximulator_throttle_rejects_total counter\n")
+           .append("fiximulator_throttle_rejects_total ")
+           .append(metrics.getThrottleRejects()).append('\n');
+        out.append("# TYPE fiximulator_throttle_delays_total counter\n")
+           .append("fiximulator_throttle_delays_total ")
+           .append(metrics.getThrottleDelays()).append('\n');
+        out.append("# TYPE fiximulator_venue_pending gauge\n")
+           .append("fiximulator_venue_pending ")
+           .append(metrics.getVenuePending()).append('\n');
+        out.append("# TYPE fiximulator_quote_lookups_total counter\n")
+           .append("fiximulator_quote_lookups_total ")
+           .append(metrics.getQuoteLookups()).append('\n');
+        out.append("# TYPE fiximulator_quote_lookup_max_seconds gauge\n")
+           .append("fiximulator_quote_lookup_max_seconds ")
+           .append(metrics.getQuoteLookupMaxMicros() / 1e6).append('\n');
+        gauges(out, "fiximulator_cache_size", "cache",
+                metrics.getCacheSizes());
+        counters(out, "fiximulator_cache_evictions_total", "cache",
+                metrics.getCacheEvictions());
+        out.append("# TYPE fiximulator_session_logged_on gauge\n");
+        for (Map.Entry<String, String> entry
+                : metrics.getSessionStates().entrySet()) {
+            out.append("fiximulator_session_logged_on{session=\"")
+               .append(escape(entry.getKey())).append("\"} ")
+               .append(entry.getValue().equals("Logged on") ? 1 : 0)
+               .append('\n');
+        }
+        List<PositionBook.Position> positions =
+                application.getPositions().getPositions();
+        String[] positionMetrics = { "executed", "notional", "open" };
+        for (String metric : positionMetrics) {
+            String name = "fiximulator_position_" + metric;
+            out.append("# TYPE ").append(name).append(" gauge\n");
+            for (PositionBook.Position position : positions) {
+                out.append(name).append("{symbol=\"")
+                   .append(escape(position.getSymbol()))
+                   .append("\",side=\"").append(escape(position.getSide()))
+                   .append("\"} ")
+                   .append(metric.equals("executed") ? position.getExecuted()
+                           : metric.equals("notional") ? position.getNotional()
+                           : position.getOpen())
+                   .append('\n');
+            }
+        }
+        StageLatency stageLatency = application.getStageLatency();
+        out.append("# TYPE fiximulator_stage_latency_seconds summary\n");
+        for (int stage = 0; stage < StageLatency.STAGES; stage++) {
+            Histogram histogram = stageLatency.getHistogram(stage);
+            String label = "stage=\"" + StageLatency.getName(stage) + "\"";
+            for (double quantile : QUANTILES) {
+                out.append("fiximulator_stage_latency_seconds{")
+                   .append(label).append(",quantile=\"").append(quantile)
+                   .append("\"} ")
+                   .append(histogram.getValueAtPercentile(quantile * 100) / 1e9)
+                   .append('\n');
+            }
+            out.append("fiximulator_stage_latency_seconds_count{")
+               .append(label).append("} ")
+               .append(histogram.getTotalCount()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void counters(StringBuilder out, String name,
+            String label, Map<String, Long> values) {
+        out.append("# TYPE ").append(name).append(" counter\n");
+        samples(out, name, label, values);
+    }
+
+    private static void gauges(StringBuilder out, String name,
+            String label, Map<String, Long> values) {
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        samples(out, name, label, values);
+    }
+
+    private static void samples(StringBuilder out, String name,
+            String label, Map<String, Long> values) {
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            out.append(name).append('{').append(label).append("=\"")
+               .append(escape(entry.getKey())).append("\"} ")
+               .append(entry.getValue()).append('\n');
+        }
+    }
+
+    private static String ordersJson(List<Order> orders) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < orders.size(); i++) {
+            if (i > 0) json.append(",\n");
+            json.append(orderJson(orders.get(i)));
+        }
+        return json.append("]\n").toString();
+    }
+
+    private static String executionsJson(List<Execution> executions) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < executions.size(); i++) {
+            Execution execution = executions.get(i);
+            if (i > 0) json.append(",\n");
+            json.append("{\"id\":").append(quote(execution.getID()))
+                .append(",\"orderID\":").append(quote(
+                    execution.getOrder() == null
+                            ? null : execution.getOrder().getID()))
+                .append(",\"clOrdID\":").append(quote(
+                    execution.getOrder() == null
+                            ? null : execution.getOrder().getClientID()))
+                .append(",\"execType\":").append(quote(execution.getExecType()))
+                .append(",\"execTranType\":")
+                .append(quote(execution.getExecTranType()))
+                .append(",\"refID\":").append(quote(execution.getRefID()))
+                .append(",\"lastShares\":").append(execution.getLastShares())
+                .append(",\"lastPx\":").append(execution.getLastPx())
+                .append(",\"leavesQty\":").append(execution.getLeavesQty())
+                .append(",\"cumQty\":").append(execution.getCumQty())
+                .append(",\"avgPx\":").append(execution.getAvgPx())
+                .append(",\"dkd\":").append(execution.isDKd())
+                .append('}');
+        }
+        return json.append("]\n").toString();
+    }
+
+    private static String positionsJson(
+            List<PositionBook.Position> positions) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < positions.size(); i++) {
+            PositionBook.Position position = positions.get(i);
+            if (i > 0) json.append(",\n");
+            json.append("{\"symbol\":").append(quote(position.getSymbol()))
+                .append(",\"side\":").append(quote(position.getSide()))
+                .append(",\"orders\":").append(position.getOrders())
+                .append(",\"executed\":").append(position.getExecuted())
+                .append(",\"notional\":").append(position.getNotional())
+                .append(",\"vwap\":").append(position.getVWAP())
+                .append(",\"open\":").append(position.getOpen())
+                .append('}');
+        }
+        return json.append("]\n").toString();
+    }
+
+    private static String orderJson(Order order) {
+        return new StringBuilder()
+            .append("{\"id\":").append(quote(order.getID()))
+            .append(",\"clOrdID\":").append(quote(order.getClientID()))
+            .append(",\"origClOrdID\":").append(quote(order.getOrigClientID()))
+            .append(",\"symbol\":").append(quote(order.getSymbol()))
+            .append(",\"side\":").append(quote(order.getSide()))
+            .append(",\"type\":").append(quote(order.getType()))
+            .append(",\"tif\":").append(quote(order.getTif()))
+            .append(",\"status\":").append(quote(order.getStatus()))
+            .append(",\"quantity\":").append(order.getQuantity())
+            .append(",\"open\":").append(order.getOpen())
+            .append(",\"executed\":").append(order.getExecuted())
+            .append(",\"limit\":").append(order.getLimit())
+            .append(",\"avgPx\":").append(order.getAvgPx())
+            .append('}').toString();
+    }
+
+    private static String quote(String value) {
+        if (value == null) return "null";
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int)c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static int intParameter(Map<String, String> query, String name,
+            int defaultValue) {
+        String value = query.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    // A value in milliseconds, fractions included, as microseconds
+    private static long microsParameter(Map<String, String> query,
+            String name, double defaultValue) {
+        String value = query.get(name);
+        double millis = value == null
+                ? defaultValue : Double.parseDouble(value);
+        return Math.max(0, Math.round(millis * 1000));
+    }
+
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> query = new HashMap<String, String>();
+        if (raw == null) return query;
+        for (String pair : raw.split("&")) {
+            int equals = pair.indexOf('=');
+            try {
+                if (equals < 0) {
+                    query.put(URLDecoder.decode(pair, "UTF-8"), "");
+                } else {
+                    query.put(URLDecoder.decode(pair.substring(0, equals),
+                            "UTF-8"), URLDecoder.decode(
+                            pair.substring(equals + 1), "UTF-8"));
+                }
+            } catch (java.io.UnsupportedEncodingException e) {}
+        }
+        return query;
+    }
+
+    private static void respond(HttpExchange exchange, int status,
+            String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+}
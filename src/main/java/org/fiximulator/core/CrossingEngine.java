@@ -0,0 +1,109 @@
+/*
+ * File     : CrossingEngine.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Crosses client orders against each other in a price-time
+ *            priority book per symbol.  An incoming order trades with
+ *            the opposite side at the resting order's price for as
+ *            long as its limit allows, the rest of a limit order joins
+ *            the book and the rest of a market order is left for the
+ *            caller to cancel.  IOC orders never rest and FOK orders
+ *            only trade when they can be filled in full.
+ *
+ *            Each match comes back as two Fills, the incoming order's
+ *            first, in Fixed units.
+ *
+ */
+
+package org.fiximulator.core;
+
+import quickfix.field.OrdType;
+import quickfix.field.Side;
+import quickfix.field.TimeInForce;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CrossingEngine {
+    private Map<String, Book> books = new HashMap<String, Book>();
+
+    public CrossingEngine() {}
+
+    public synchronized List<Fill> submit(Order order) {
+        List<Fill> fills = new ArrayList<Fill>();
+        Book book = book(order.getSymbol());
+        boolean buy = isBuy(order);
+        long limit = limitOf(order);
+        PriceLevels other = buy ? book.sells : book.buys;
+        long remaining = Fixed.qty(order.getOpen());
+        if (order.getFIXTif() == TimeInForce.FILL_OR_KILL
+                && other.available(limit, remaining) < remaining) {
+            return fills;
+        }
+        PriceLevels.Resting passive;
+        while (remaining > 0 && (passive = other.best()) != null) {
+            long price = other.bestPrice();
+            if (limit != 0 && (buy ? price > limit : price < limit)) break;
+            long qty = Math.min(remaining, passive.remaining);
+            remaining -= qty;
+            passive.remaining -= qty;
+            fills.add(new Fill(order, qty, price));
+            fills.add(new Fill(passive.order, qty, price));
+            if (passive.remaining == 0) other.removeBest();
+        }
+        if (remaining > 0 && !isImmediate(order)) {
+            (buy ? book.buys : book.sells).add(order, limit, remaining);
+        }
+        return fills;
+    }
+
+    public synchronized boolean remove(Order order) {
+        Book book = books.get(order.getSymbol());
+        if (book == null) return false;
+        return (isBuy(order) ? book.buys : book.sells)
+                .remove(order, limitOf(order));
+    }
+
+    public synchronized int getRestingCount() {
+        int count = 0;
+        for (Book book : books.values()) {
+            count += book.buys.size() + book.sells.size();
+        }
+        return count;
+    }
+
+    // Orders that can not rest in the book
+    public static boolean isImmediate(Order order) {
+        return limitOf(order) == 0
+                || order.getFIXTif() == TimeInForce.IMMEDIATE_OR_CANCEL
+                || order.getFIXTif() == TimeInForce.FILL_OR_KILL;
+    }
+
+    private Book book(String symbol) {
+        Book book = books.get(symbol);
+        if (book == null) {
+            book = new Book();
+            books.put(symbol, book);
+        }
+        return book;
+    }
+
+    private static boolean isBuy(Order order) {
+        return order.getFIXSide() == Side.BUY;
+    }
+
+    private static long limitOf(Order order) {
+        if (order.getFIXType() != OrdType.LIMIT || order.getLimit() <= 0) {
+            return 0;
+        }
+        return Fixed.price(order.getLimit());
+    }
+
+    private static class Book {
+        private final PriceLevels buys = new PriceLevels(true);
+        private final PriceLevels sells = new PriceLevels(false);
+    }
+}
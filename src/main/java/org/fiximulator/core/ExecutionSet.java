@@ -5,6 +5,8 @@
  *
  * Contents : This class is a Set of Execution objects with a utility
  *            methods toto access the individual executions.
+ *            With a CacheBudget the oldest executions are evicted by
+ *            the shared byte budget instead of FIXimulatorCachedObjects.
  *
  */
 
@@ -14,43 +16,128 @@ import org.fiximulator.ui.ExecutionTableModel;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
-public class ExecutionSet {
+public class ExecutionSet implements CacheBudget.Evictable {
     private ArrayList<Execution> executions = new ArrayList<Execution>();
     private ExecutionTableModel executionTableModel = null;
+    private StateStore stateStore = null;
+    private CacheBudget budget = null;
+    private int fixedLimit = 0;
+    private final LongAdder evictions = new LongAdder();
 
     public ExecutionSet() {}
 
     public void add(Execution execution) {
-        executions.add(execution);
-        int limit = 50;
-        try {
-            limit = (int)FIXimulator.getApplication().getSettings()
-                    .getLong("FIXimulatorCachedObjects");
-        } catch (Exception e) {}
-        while (executions.size() > limit) {
-            executions.remove(0);
+        synchronized (this) {
+            executions.add(execution);
+            trim();
         }
-        executionTableModel.update();
+        if (budget != null) charge(execution);
+        if (stateStore != null) stateStore.record(execution);
+        if (executionTableModel != null) executionTableModel.update();
     }
 
-    public void update() {
-        executionTableModel.update();
+    public void update(Execution execution) {
+        if (stateStore != null) stateStore.record(execution);
+        if (executionTableModel != null) executionTableModel.update();
+    }
+
+    // Executions recovered by the StateStore at startup
+    public void restore(List<Execution> restored) {
+        synchronized (this) {
+            executions.addAll(restored);
+            trim();
+        }
+        if (budget != null) {
+            for (Execution execution : restored) {
+                charge(execution);
+            }
+        }
+    }
+
+    public synchronized List<Execution> getSnapshot() {
+        return new ArrayList<Execution>(executions);
+    }
+
+    // A cache size that does not follow the setting, for the benchmarks
+    void setFixedLimit(int fixedLimit) {
+        this.fixedLimit = fixedLimit;
+    }
+
+    public void setStateStore(StateStore stateStore) {
+        this.stateStore = stateStore;
+    }
+
+    public void setCacheBudget(CacheBudget budget) {
+        this.budget = budget;
+        budget.register("executions", this);
+        for (Execution execution : getSnapshot()) {
+            charge(execution);
+        }
+    }
+
+    // Called by the CacheBudget, which holds its own lock
+    public synchronized long evict(long bytes) {
+        long evicted = 0;
+        int count = 0;
+        while (evicted < bytes && count < executions.size()) {
+            Execution execution = executions.get(count++);
+            long size = SizeEstimator.estimate(execution);
+            budget.release(this, size);
+            if (execution.getOrder() != null) {
+                budget.unpin(execution.getOrder());
+            }
+            evicted += size;
+        }
+        executions.subList(0, count).clear();
+        evictions.add(count);
+        FlightEvents.cacheEviction("executions", count, evicted);
+        return evicted;
+    }
+
+    private void charge(Execution execution) {
+        if (execution.getOrder() != null) budget.pin(execution.getOrder());
+        budget.charge(this, SizeEstimator.estimate(execution));
+    }
+
+    private void trim() {
+        if (budget != null) return;
+        int limit = fixedLimit;
+        if (limit == 0) {
+            limit = 50;
+            try {
+                limit = (int)FIXimulator.getApplication().getSettings()
+                        .getLong("FIXimulatorCachedObjects");
+            } catch (Exception e) {}
+        }
+        int count = executions.size() - limit;
+        if (count > 0) {
+            executions.subList(0, count).clear();
+            evictions.add(count);
+            FlightEvents.cacheEviction("executions", count, 0);
+        }
     }
 
     public void addCallback(ExecutionTableModel executionTableModel) {
         this.executionTableModel = executionTableModel;
     }
 
-    public int getCount() {
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized int getCount() {
         return executions.size();
     }
 
-    public Execution getExecution(int i) {
-        return executions.get(i);
+    // null when the row was evicted since the count was taken
+    public synchronized Execution getExecution(int i) {
+        return i < executions.size() ? executions.get(i) : null;
     }
 
-    public Execution getExecution(String id) {
+    public synchronized Execution getExecution(String id) {
         Iterator<Execution> iterator = executions.iterator();
         while (iterator.hasNext()) {
             Execution execution = iterator.next();
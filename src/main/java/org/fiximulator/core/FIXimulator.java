@@ -16,7 +16,6 @@ import quickfix.DefaultMessageFactory;
 import quickfix.FieldConvertError;
 import quickfix.FileLogFactory;
 import quickfix.FileStoreFactory;
-import quickfix.JdbcLogFactory;
 import quickfix.LogFactory;
 import quickfix.MessageFactory;
 import quickfix.MessageStoreFactory;
@@ -28,6 +27,7 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 
 public class FIXimulator {
@@ -35,6 +35,8 @@ public class FIXimulator {
     private Acceptor acceptor = null;
     private static FIXimulatorApplication application = null;
     private static LogMessageSet messages = null;
+    private static AsyncJdbcLogFactory databaseLog = null;
+    private static CacheBudget cacheBudget = null;
 
     public FIXimulator() {
         InputStream inputStream = null;
@@ -50,20 +52,113 @@ public class FIXimulator {
         try {
             SessionSettings settings = new SessionSettings(inputStream);
             application = new FIXimulatorApplication(settings, messages);
-            MessageStoreFactory messageStoreFactory =
-                    new FileStoreFactory(settings);
+            application.getMetrics().register();
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    application.getStageLatency().dump(System.out);
+                }
+            });
+            String store = "file";
+            try {
+                store = settings.getString("FIXimulatorMessageStore");
+            } catch (Exception ex) {}
+            MessageStoreFactory messageStoreFactory;
+            if (store.equalsIgnoreCase("mapped")) {
+                messageStoreFactory = new MappedStoreFactory(settings);
+            } else {
+                messageStoreFactory = new FileStoreFactory(settings);
+            }
             boolean logToFile = false;
             boolean logToDB = false;
+            boolean journal = false;
             LogFactory logFactory;
             try {
                 logToFile = settings.getBool("FIXimulatorLogToFile");
                 logToDB = settings.getBool("FIXimulatorLogToDB");
             } catch (FieldConvertError ex) {}
+            try {
+                journal = settings.getBool("FIXimulatorMessageJournal");
+            } catch (Exception ex) {}
+            if (journal) {
+                String journalPath = "journal";
+                try {
+                    journalPath =
+                            settings.getString("FIXimulatorMessageJournalPath");
+                } catch (Exception ex) {}
+                try {
+                    messages.setJournal(MessageJournal.open(journalPath));
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            boolean orderIndex = false;
+            try {
+                orderIndex = settings.getBool("FIXimulatorOrderIndex");
+            } catch (Exception ex) {}
+            if (orderIndex) {
+                String indexPath = "index";
+                try {
+                    indexPath = settings.getString("FIXimulatorOrderIndexPath");
+                } catch (Exception ex) {}
+                try {
+                    application.getOrders().setOrderIndex(
+                            OrderIndex.open(indexPath));
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            long budgetMB = 0;
+            try {
+                budgetMB = settings.getLong("FIXimulatorCacheBudgetMB");
+            } catch (Exception ex) {}
+            if (budgetMB > 0) {
+                cacheBudget = new CacheBudget(budgetMB * 1024 * 1024);
+                application.getOrders().setCacheBudget(cacheBudget);
+                application.getExecutions().setCacheBudget(cacheBudget);
+                messages.setCacheBudget(cacheBudget);
+            }
+            boolean persistState = false;
+            try {
+                persistState = settings.getBool("FIXimulatorStatePersistence");
+            } catch (Exception ex) {}
+            if (persistState) {
+                String statePath = "state";
+                long snapshotInterval = 10000;
+                try {
+                    statePath = settings.getString("FIXimulatorStatePath");
+                } catch (Exception ex) {}
+                try {
+                    snapshotInterval =
+                            settings.getLong("FIXimulatorStateSnapshotInterval");
+                } catch (Exception ex) {}
+                try {
+                    final StateStore stateStore = StateStore.open(
+                            statePath, (int)snapshotInterval);
+                    stateStore.restore(application.getOrders(),
+                            application.getExecutions());
+                    application.getPositions().restore(
+                            application.getOrders().getSnapshot());
+                    application.restoreWorking();
+                    Runtime.getRuntime().addShutdownHook(new Thread() {
+                        @Override
+                        public void run() {
+                            stateStore.snapshot();
+                            stateStore.close();
+                        }
+                    });
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            if (logToDB) {
+                databaseLog = new AsyncJdbcLogFactory(settings);
+            }
             if (logToFile && logToDB) {
                 logFactory = new CompositeLogFactory(
                     new LogFactory[] { new ScreenLogFactory(settings),
                                        new FileLogFactory(settings),
-                                       new JdbcLogFactory(settings)});
+                                       databaseLog});
             } else if (logToFile) {
                 logFactory = new CompositeLogFactory(
                     new LogFactory[] { new ScreenLogFactory(settings),
@@ -71,7 +166,7 @@ public class FIXimulator {
             } else if (logToDB) {
                 logFactory = new CompositeLogFactory(
                     new LogFactory[] { new ScreenLogFactory(settings),
-                                       new JdbcLogFactory(settings)});
+                                       databaseLog});
             } else {
                 logFactory = new ScreenLogFactory(settings);
             }
@@ -92,6 +187,15 @@ public class FIXimulator {
         return messages;
     }
 
+    public static AsyncJdbcLogFactory getDatabaseLog() {
+        return databaseLog;
+    }
+
+    // null unless FIXimulatorCacheBudgetMB is set
+    public static CacheBudget getCacheBudget() {
+        return cacheBudget;
+    }
+
     public void start() {
         try {
             acceptor.start();
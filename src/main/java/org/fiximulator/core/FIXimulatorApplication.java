@@ -30,6 +30,7 @@ import quickfix.SessionNotFound;
 import quickfix.SessionSettings;
 import quickfix.UnsupportedMessageType;
 import quickfix.field.AvgPx;
+import quickfix.field.BusinessRejectReason;
 import quickfix.field.ClOrdID;
 import quickfix.field.CumQty;
 import quickfix.field.CxlRejResponseTo;
@@ -41,15 +42,25 @@ import quickfix.field.IDSource;
 import quickfix.field.LastPx;
 import quickfix.field.LastShares;
 import quickfix.field.LeavesQty;
+import quickfix.field.MsgSeqNum;
+import quickfix.field.MsgType;
 import quickfix.field.OnBehalfOfCompID;
 import quickfix.field.OnBehalfOfSubID;
+import quickfix.field.OrdRejReason;
 import quickfix.field.OrdStatus;
 import quickfix.field.OrderID;
 import quickfix.field.OrderQty;
 import quickfix.field.OrigClOrdID;
+import quickfix.field.Price;
+import quickfix.field.RefMsgType;
+import quickfix.field.RefSeqNum;
+import quickfix.field.RefTagID;
 import quickfix.field.SecurityID;
+import quickfix.field.SessionRejectReason;
 import quickfix.field.Side;
 import quickfix.field.Symbol;
+import quickfix.field.Text;
+import quickfix.field.TimeInForce;
 import quickfix.fix42.Message.Header;
 
 import java.io.BufferedOutputStream;
@@ -57,7 +68,18 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
@@ -66,11 +88,16 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
     public static final String LIQUIDITY_FLAG_SETTINGS_KEY = "FIXimulatorSendLiquidityFlag";
     private static final int LIQUIDITY_FLAG_FIELD = 9882;
     private static final String LIQUIDITY_FLAG_VALUE = "5/1";
+    private static final String DONE_STATUSES = "23458C";
+    // slice delays shorter than this are timed by the Pacer
+    private static final long SCHEDULED_DELAY_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(1);
 
-    private boolean connected;
+    // read by the scheduler and venue threads
+    private volatile boolean connected;
     private JLabel connectedStatus;
     private JLabel executorStatus;
-    private boolean executorStarted;
+    private volatile boolean executorStarted;
     private Executor executor;
     private Thread executorThread;
     private LogMessageSet messages;
@@ -80,6 +107,30 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
     private Random random = new Random();
     private OrderSet orders = null;
     private ExecutionSet executions = null;
+    private final SimulatorMetrics metrics;
+    private final StageLatency stageLatency = new StageLatency();
+    private final PositionBook positions = new PositionBook();
+    private FillEngine fillEngine = null;
+    private CrossingEngine crossingEngine = null;
+    private final FillStrategies strategies;
+    private final Pacer pacer = new Pacer();
+    private VenueEmulator venue = null;
+    private final boolean echoMode;
+    private double echoPrice = 100;
+    private final AtomicLong echoIDs = new AtomicLong();
+    private final AtomicLong rejectIDs = new AtomicLong();
+    private boolean persistState = false;
+    private boolean warnedGTC = false;
+    // restored orders crossed once the session is logged on
+    private List<Order> restoredToCross = new ArrayList<Order>();
+    private String echoOnBehalfOfCompID = null;
+    private String echoOnBehalfOfSubID = null;
+    // one scheduler runs the slices of every order being worked
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final Map<String, Schedule> scheduled =
+            new ConcurrentHashMap<String, Schedule>();
+    // set by dispatch, on the session thread or the venue emulator's
+    private long receivedNanos = 0;
 
     private final ImageIcon greenIcon;
     private final ImageIcon redIcon;
@@ -89,24 +140,109 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
         this.messages = messages;
         orders = new OrderSet();
         executions = new ExecutionSet();
+        metrics = new SimulatorMetrics(this);
+        boolean useFillEngine = false;
+        try {
+            useFillEngine = settings.getBool("FIXimulatorFillEngine");
+        } catch (Exception e) {}
+        if (useFillEngine) {
+            long levels = 5;
+            double levelSize = 500;
+            double tickSize = 0.01;
+            try {
+                levels = settings.getLong("FIXimulatorBookLevels");
+            } catch (Exception e) {}
+            try {
+                levelSize = settings.getDouble("FIXimulatorBookLevelSize");
+            } catch (Exception e) {}
+            try {
+                tickSize = settings.getDouble("FIXimulatorBookTickSize");
+            } catch (Exception e) {}
+            fillEngine = new FillEngine((int)levels,
+                    Fixed.qty(levelSize), Fixed.price(tickSize));
+        }
+        boolean useCrossing = false;
+        try {
+            useCrossing = settings.getBool("FIXimulatorCrossing");
+        } catch (Exception e) {}
+        if (useCrossing) {
+            crossingEngine = new CrossingEngine();
+        }
+        strategies = new FillStrategies(settings);
+        try {
+            pacer.setRate(settings.getDouble("FIXimulatorPacingRate"));
+        } catch (Exception e) {}
+        try {
+            pacer.setSpin(settings.getBool("FIXimulatorPacingSpin"));
+        } catch (Exception e) {}
+        boolean echo = false;
+        try {
+            echo = settings.getBool("FIXimulatorEchoMode");
+        } catch (Exception e) {}
+        echoMode = echo;
+        try {
+            echoPrice = settings.getDouble("FIXimulatorEchoPrice");
+        } catch (Exception e) {}
+        long schedulerThreads = 1;
+        try {
+            schedulerThreads = settings.getLong("FIXimulatorSchedulerThreads");
+        } catch (Exception e) {}
+        scheduler = new ScheduledThreadPoolExecutor(
+                (int)Math.max(1, schedulerThreads), new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "FIXimulator scheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        try {
+            persistState = settings.getBool("FIXimulatorStatePersistence");
+        } catch (Exception e) {}
+        boolean emulateVenue = false;
+        try {
+            emulateVenue = settings.getBool("FIXimulatorVenueEmulation");
+        } catch (Exception e) {}
+        if (emulateVenue) {
+            venue = new VenueEmulator(this, settings);
+        }
         greenIcon = new ImageIcon(getClass().getResource("/org/fiximulator/ui/green.gif"));
         redIcon = new ImageIcon(getClass().getResource("/org/fiximulator/ui/red.gif"));
     }
 
-    public void onCreate(SessionID sessionID) {}
+    public void onCreate(SessionID sessionID) {
+        metrics.sessionState(sessionID, "Created");
+    }
 
     public void onLogon(SessionID sessionID) {
         connected = true;
         currentSession = sessionID;
+        metrics.sessionState(sessionID, "Logged on");
         dictionary = Session.lookupSession(currentSession).getDataDictionary();
+        if (echoMode) {
+            // sendMessage reads these for every message, echo mode only once
+            try {
+                if (settings.getBool("FIXimulatorSendOnBehalfOfCompID"))
+                    echoOnBehalfOfCompID = settings.getString(
+                            sessionID, "OnBehalfOfCompID");
+            } catch (Exception e) {}
+            try {
+                if (settings.getBool("FIXimulatorSendOnBehalfOfSubID"))
+                    echoOnBehalfOfSubID = settings.getString(
+                            sessionID, "OnBehalfOfSubID");
+            } catch (Exception e) {}
+        }
         if (connectedStatus != null)
             connectedStatus.setIcon(greenIcon);
+        crossRestored();
     }
 
     public void onLogout(SessionID sessionID) {
         connected = false;
         currentSession = null;
-        connectedStatus.setIcon(redIcon);
+        metrics.sessionState(sessionID, "Logged out");
+        if (connectedStatus != null)
+            connectedStatus.setIcon(redIcon);
     }
 
     // NewOrderSingle handling
@@ -114,8 +250,23 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
             SessionID sessionID)
         throws FieldNotFound, UnsupportedMessageType, IncorrectTagValue {
         Order order = new Order(message);
+        stageLatency.record(StageLatency.DECODE, receivedNanos);
+        order.setReceivedNanos(receivedNanos);
+        FlightEvents.orderReceived(order, "NewOrderSingle");
         order.setReceivedOrder(true);
-        if (executorStarted) {
+        positions.added(order);
+        if (order.getFIXTif() == TimeInForce.GOOD_TILL_CANCEL
+                && !persistState && !warnedGTC) {
+            warnedGTC = true;
+            System.out.println("GTC orders are not carried over to the "
+                    + "next day unless FIXimulatorStatePersistence is on");
+        }
+        if (crossingEngine != null) {
+            orders.add(order, false);
+            acknowledge(order);
+            cross(order);
+        } else if (executorStarted) {
+            order.setQueuedNanos(System.nanoTime());
             orders.add(order, true);
             executorThread.interrupt();
         } else {
@@ -135,6 +286,8 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
             SessionID sessionID)
         throws FieldNotFound, UnsupportedMessageType, IncorrectTagValue {
         Order order = new Order(message);
+        order.setReceivedNanos(receivedNanos);
+        FlightEvents.orderReceived(order, "OrderCancelRequest");
         order.setReceivedCancel(true);
         orders.add(order, false);
         boolean autoPending = false;
@@ -156,6 +309,8 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
             SessionID sessionID)
         throws FieldNotFound, UnsupportedMessageType, IncorrectTagValue {
         Order order = new Order(message);
+        order.setReceivedNanos(receivedNanos);
+        FlightEvents.orderReceived(order, "OrderCancelReplaceRequest");
         order.setReceivedReplace(true);
         orders.add(order, false);
         boolean autoPending = false;
@@ -182,6 +337,11 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
             SessionID sessionID)
         throws FieldNotFound, UnsupportedMessageType, IncorrectTagValue {}
 
+    // BusinessMessageReject handling
+    public void onMessage(quickfix.fix42.BusinessMessageReject message,
+            SessionID sessionID)
+        throws FieldNotFound, UnsupportedMessageType, IncorrectTagValue {}
+
     public void onMessage(quickfix.fix42.DontKnowTrade message,
             SessionID sessionID)
         throws FieldNotFound, UnsupportedMessageType, IncorrectTagValue {
@@ -190,25 +350,213 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
             message.get(execID);
             Execution execution =
                     executions.getExecution(execID.getValue().toString());
-            execution.setDKd(true);
-            executions.update();
+            if (execution != null) {
+                execution.setDKd(true);
+                executions.update(execution);
+            }
         } catch (FieldNotFound ex) {}
     }
 
     public void fromApp(Message message, SessionID sessionID)
         throws FieldNotFound, IncorrectDataFormat,
             IncorrectTagValue, UnsupportedMessageType {
+        metrics.messageIn(message);
+        if (venue != null) {
+            venue.received(message, sessionID, System.nanoTime());
+            return;
+        }
+        dispatch(message, sessionID);
+    }
+
+    // Hands an incoming message to its handler
+    private void dispatch(Message message, SessionID sessionID)
+        throws FieldNotFound, IncorrectTagValue, UnsupportedMessageType {
+        receivedNanos = System.nanoTime();
+        if (echoMode && message.getHeader().getString(MsgType.FIELD)
+                .equals(MsgType.ORDER_SINGLE)) {
+            echo(message, sessionID);
+            return;
+        }
         messages.add(message, true, dictionary, sessionID);
         crack(message, sessionID);
     }
 
+    /*
+     * Called by the venue emulator's thread once the message's latency
+     * has passed.  Nothing there answers a message the handlers could
+     * not take, so it is rejected here the way the session would have
+     * rejected it from fromApp.
+     */
+    public void release(Message message, SessionID sessionID) {
+        try {
+            try {
+                dispatch(message, sessionID);
+            } catch (UnsupportedMessageType e) {
+                sendReject(businessReject(message,
+                        BusinessRejectReason.UNSUPPORTED_MESSAGE_TYPE,
+                        "Unsupported message type"), sessionID);
+            } catch (FieldNotFound e) {
+                sendReject(sessionReject(message,
+                        SessionRejectReason.REQUIRED_TAG_MISSING, e.field,
+                        "Required tag missing"), sessionID);
+            } catch (IncorrectTagValue e) {
+                sendReject(sessionReject(message,
+                        SessionRejectReason.VALUE_IS_INCORRECT, e.field,
+                        "Value is incorrect (out of range) for this tag"),
+                        sessionID);
+            }
+        } catch (Exception e) {    e.printStackTrace(); }
+    }
+
+    // Answers a message the venue emulator's throttle turned away
+    public void rejectThrottled(Message message, SessionID sessionID) {
+        String text = "Throttle limit exceeded";
+        messages.add(message, true, dictionary, sessionID);
+        try {
+            String msgType = message.getHeader().getString(MsgType.FIELD);
+            Message reject;
+            if (msgType.equals(MsgType.ORDER_SINGLE)) {
+                double qty = message.getDouble(OrderQty.FIELD);
+                String execID = "T" + rejectIDs.incrementAndGet();
+                quickfix.fix42.ExecutionReport report =
+                        new quickfix.fix42.ExecutionReport(
+                            new OrderID("NONE"),
+                            new ExecID(execID),
+                            new ExecTransType(ExecTransType.NEW),
+                            new ExecType(ExecType.REJECTED),
+                            new OrdStatus(OrdStatus.REJECTED),
+                            new Symbol(message.getString(Symbol.FIELD)),
+                            new Side(message.getChar(Side.FIELD)),
+                            new LeavesQty(0),
+                            new CumQty(0),
+                            new AvgPx(0));
+                report.set(new ClOrdID(message.getString(ClOrdID.FIELD)));
+                report.set(new OrderQty(qty));
+                report.set(new OrdRejReason(OrdRejReason.BROKER_OPTION));
+                report.set(new Text(text));
+                reject = report;
+                metrics.executionSent();
+            } else if (msgType.equals(MsgType.ORDER_CANCEL_REQUEST)
+                    || msgType.equals(MsgType.ORDER_CANCEL_REPLACE_REQUEST)) {
+                boolean cancel = msgType.equals(MsgType.ORDER_CANCEL_REQUEST);
+                String origClOrdID = message.getString(OrigClOrdID.FIELD);
+                Order order = orders.getOrder(origClOrdID);
+                quickfix.fix42.OrderCancelReject cancelReject =
+                        new quickfix.fix42.OrderCancelReject(
+                            new OrderID(order != null
+                                    ? order.getID() : "NONE"),
+                            new ClOrdID(message.getString(ClOrdID.FIELD)),
+                            new OrigClOrdID(origClOrdID),
+                            new OrdStatus(order != null
+                                    ? order.getFIXStatus()
+                                    : OrdStatus.REJECTED),
+                            new CxlRejResponseTo(cancel
+                                ? CxlRejResponseTo.ORDER_CANCEL_REQUEST
+                                : CxlRejResponseTo
+                                    .ORDER_CANCEL_REPLACE_REQUEST));
+                cancelReject.set(new Text(text));
+                reject = cancelReject;
+            } else {
+                reject = businessReject(message,
+                        BusinessRejectReason.OTHER, text);
+            }
+            sendReject(reject, sessionID);
+        } catch (Exception e) {    e.printStackTrace(); }
+    }
+
+    private quickfix.fix42.BusinessMessageReject businessReject(
+            Message message, int reason, String text) throws FieldNotFound {
+        quickfix.fix42.BusinessMessageReject reject =
+                new quickfix.fix42.BusinessMessageReject(
+                    new RefMsgType(message.getHeader()
+                            .getString(MsgType.FIELD)),
+                    new BusinessRejectReason(reason));
+        reject.set(new RefSeqNum(
+                message.getHeader().getInt(MsgSeqNum.FIELD)));
+        reject.set(new Text(text));
+        return reject;
+    }
+
+    private quickfix.fix42.Reject sessionReject(Message message, int reason,
+            int tag, String text) throws FieldNotFound {
+        quickfix.fix42.Reject reject = new quickfix.fix42.Reject(
+                new RefSeqNum(message.getHeader().getInt(MsgSeqNum.FIELD)));
+        reject.set(new RefMsgType(
+                message.getHeader().getString(MsgType.FIELD)));
+        if (tag > 0) reject.set(new RefTagID(tag));
+        reject.set(new SessionRejectReason(reason));
+        reject.set(new Text(text));
+        return reject;
+    }
+
+    private void sendReject(Message reject, SessionID sessionID) {
+        try {
+            Session.sendToTarget(reject, sessionID);
+        } catch (SessionNotFound e) { e.printStackTrace(); }
+    }
+
     public void toApp(Message message, SessionID sessionID) throws DoNotSend {
+        metrics.messageOut(message);
+        if (echoMode) return;
         try {
             messages.add(message, false, dictionary, sessionID);
             crack(message, sessionID);
         } catch (Exception e) {    e.printStackTrace(); }
     }
 
+    /*
+     * Echo mode answers a NewOrderSingle with an ack and a full fill
+     * right on the session thread, at the order's price or else
+     * FIXimulatorEchoPrice.  No Order is kept, nothing reaches the UI
+     * and no messages are captured.
+     */
+    public void echo(Message message, SessionID sessionID)
+            throws FieldNotFound {
+        String orderID = "E" + echoIDs.incrementAndGet();
+        try {
+            Session.sendToTarget(
+                    buildEchoReport(message, orderID, false), sessionID);
+            Session.sendToTarget(
+                    buildEchoReport(message, orderID, true), sessionID);
+        } catch (SessionNotFound e) { e.printStackTrace(); }
+        metrics.executionSent();
+        metrics.executionSent();
+    }
+
+    public quickfix.fix42.ExecutionReport buildEchoReport(Message message,
+            String orderID, boolean fill) throws FieldNotFound {
+        double qty = message.getDouble(OrderQty.FIELD);
+        double price = message.isSetField(Price.FIELD)
+                ? message.getDouble(Price.FIELD) : echoPrice;
+        quickfix.fix42.ExecutionReport report =
+                new quickfix.fix42.ExecutionReport(
+                    new OrderID(orderID),
+                    new ExecID(orderID + (fill ? "F" : "A")),
+                    new ExecTransType(ExecTransType.NEW),
+                    new ExecType(fill ? ExecType.FILL : ExecType.NEW),
+                    new OrdStatus(fill ? OrdStatus.FILLED : OrdStatus.NEW),
+                    new Symbol(message.getString(Symbol.FIELD)),
+                    new Side(message.getChar(Side.FIELD)),
+                    new LeavesQty(fill ? 0 : qty),
+                    new CumQty(fill ? qty : 0),
+                    new AvgPx(fill ? price : 0));
+        report.set(new ClOrdID(message.getString(ClOrdID.FIELD)));
+        report.set(new OrderQty(qty));
+        if (fill) {
+            report.set(new LastShares(qty));
+            report.set(new LastPx(price));
+        }
+        if (echoOnBehalfOfCompID != null && !echoOnBehalfOfCompID.equals("")) {
+            report.getHeader().setString(
+                    OnBehalfOfCompID.FIELD, echoOnBehalfOfCompID);
+        }
+        if (echoOnBehalfOfSubID != null && !echoOnBehalfOfSubID.equals("")) {
+            report.getHeader().setString(
+                    OnBehalfOfSubID.FIELD, echoOnBehalfOfSubID);
+        }
+        return report;
+    }
+
     public void fromAdmin(Message message, SessionID sessionID)
         throws
         FieldNotFound, IncorrectDataFormat, IncorrectTagValue, RejectLogon {}
@@ -232,10 +580,35 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
         return executions;
     }
 
+    public PositionBook getPositions() {
+        return positions;
+    }
+
+    public StageLatency getStageLatency() {
+        return stageLatency;
+    }
+
+    public SimulatorMetrics getMetrics() {
+        return metrics;
+    }
+
     public SessionSettings getSettings() {
         return settings;
     }
 
+    public DataDictionary getDataDictionary() {
+        // messages journaled before this run are shown before any logon
+        if (dictionary == null) {
+            try {
+                dictionary =
+                        new DataDictionary(settings.getString("DataDictionary"));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return dictionary;
+    }
+
     public void saveSettings() {
         try {
             OutputStream outputStream =
@@ -256,8 +629,10 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
         acknowledgement.setExecTranType(ExecTransType.NEW);
         acknowledgement.setLeavesQty(order.getOpen());
         sendExecution(acknowledgement);
+        FlightEvents.orderAcknowledged(order);
         order.setReceivedOrder(false);
-        orders.update();
+        orders.update(order);
+        positions.update(order);
     }
 
     public void reject(Order order) {
@@ -268,7 +643,9 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
         reject.setLeavesQty(order.getOpen());
         sendExecution(reject);
         order.setReceivedOrder(false);
-        orders.update();
+        orders.update(order);
+        positions.update(order);
+        stopWorking(order);
     }
 
     public void dfd(Order order) {
@@ -280,7 +657,9 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
         dfd.setCumQty(order.getExecuted());
         dfd.setAvgPx(order.getAvgPx());
         sendExecution(dfd);
-        orders.update();
+        orders.update(order);
+        positions.update(order);
+        stopWorking(order);
     }
 
     public void pendingCancel(Order order) {
@@ -293,7 +672,7 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
         pending.setAvgPx(order.getAvgPx());
         sendExecution(pending);
         order.setReceivedCancel(false);
-        orders.update();
+        orders.update(order);
     }
 
     public void cancel(Order order) {
@@ -305,13 +684,18 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
         cancel.setCumQty(order.getExecuted());
         cancel.setAvgPx(order.getAvgPx());
         sendExecution(cancel);
+        FlightEvents.cancelReplace(order, "Cancel");
         order.setReceivedCancel(false);
-        orders.update();
+        orders.update(order);
+        stopWorking(order);
+        closeOriginal(order, OrdStatus.CANCELED);
+        positions.update(order);
     }
 
     public void rejectCancelReplace(Order order, boolean cancel) {
         order.setReceivedCancel(false);
         order.setReceivedReplace(false);
+        order.setRejectedCancelReplace(true);
         // *** Required fields ***
         // OrderID (37)
         OrderID orderID = new OrderID(order.getID());
@@ -343,7 +727,7 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
 
         // *** Send message ***
         sendMessage(rejectMessage);
-        orders.update();
+        orders.update(order);
     }
 
     public void pendingReplace(Order order) {
@@ -356,7 +740,7 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
         pending.setAvgPx(order.getAvgPx());
         order.setReceivedReplace(false);
         sendExecution(pending);
-        orders.update();
+        orders.update(order);
     }
 
     public void replace(Order order) {
@@ -369,17 +753,35 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
         replace.setAvgPx(order.getAvgPx());
         order.setReceivedReplace(false);
         sendExecution(replace);
-        orders.update();
+        FlightEvents.cancelReplace(order, "Replace");
+        orders.update(order);
+        closeOriginal(order, OrdStatus.REPLACED);
+        // the replacement works what the original left open
+        positions.added(order);
+        // the replacement joins the back of the queue at its new price
+        if (crossingEngine != null) cross(order);
+    }
+
+    // The order a cancel or replace request refers to stops working
+    private void closeOriginal(Order request, char status) {
+        if (request.getOrigClientID() == null) return;
+        Order original = orders.getOrder(request.getOrigClientID());
+        if (original != null && original != request) {
+            positions.closed(original);
+            stopWorking(original);
+            orders.close(original, status);
+        }
     }
 
     public void execute(Execution execution) {
         Order order = execution.getOrder();
-        double fillQty = execution.getLastShares();
-        double fillPrice = execution.getLastPx();
-        double open = order.getOpen();
+        long fillQty = Fixed.qty(execution.getLastShares());
+        long fillPrice = Fixed.price(execution.getLastPx());
+        long open = Fixed.qty(order.getOpen());
+        long executed = Fixed.qty(order.getExecuted());
         // partial fill
         if (fillQty < open) {
-            order.setOpen(open - fillQty);
+            order.setOpen(Fixed.toQty(open - fillQty));
             order.setStatus(OrdStatus.PARTIALLY_FILLED);
             execution.setExecType(ExecType.PARTIAL_FILL);
             // full or over execution
@@ -388,35 +790,155 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
             order.setStatus(OrdStatus.FILLED);
             execution.setExecType(ExecType.FILL);
         }
-        double avgPx = (order.getAvgPx() * order.getExecuted()
-                     + fillPrice * fillQty)
-                     / (order.getExecuted() + fillQty);
-        order.setAvgPx(avgPx);
-        order.setExecuted(order.getExecuted() + fillQty);
-        orders.update();
+        long avgPx = Fixed.avgPx(executed, Fixed.price(order.getAvgPx()),
+                fillQty, fillPrice);
+        order.setAvgPx(Fixed.toPrice(avgPx));
+        order.setExecuted(Fixed.toQty(executed + fillQty));
+        orders.update(order);
+        positions.fill(order, fillQty, fillPrice);
         // update execution
         execution.setExecTranType(ExecTransType.NEW);
         execution.setLeavesQty(order.getOpen());
         execution.setCumQty(order.getExecuted());
-        execution.setAvgPx(avgPx);
+        execution.setAvgPx(order.getAvgPx());
         sendExecution(execution);
     }
 
+    /*
+     * Crosses an order against the other client orders, both sides are
+     * filled through execute() and the unfilled rest of a market, IOC
+     * or FOK order is canceled.
+     */
+    private void cross(Order order) {
+        for (Fill fill : crossingEngine.submit(order)) {
+            Execution execution = new Execution(fill.getOrder());
+            execution.setLastShares(Fixed.toQty(fill.getQty()));
+            execution.setLastPx(Fixed.toPrice(fill.getPrice()));
+            execute(execution);
+            FlightEvents.fillSent(execution);
+        }
+        if (CrossingEngine.isImmediate(order) && order.getOpen() > 0) {
+            cancelUnfilled(order);
+        }
+    }
+
+    // Takes an order out of the books and stops its fill schedule
+    private void stopWorking(Order order) {
+        if (fillEngine != null) fillEngine.remove(order);
+        if (crossingEngine != null) crossingEngine.remove(order);
+        Schedule schedule = scheduled.remove(order.getID());
+        if (schedule != null) schedule.stop();
+    }
+
+    public int getScheduledOrders() {
+        return scheduled.size();
+    }
+
+    // Cancels what is left of an order the simulator could not fill
+    public void cancelUnfilled(Order order) {
+        Execution cancel = new Execution(order);
+        order.setStatus(OrdStatus.CANCELED);
+        cancel.setExecType(ExecType.CANCELED);
+        cancel.setExecTranType(ExecTransType.NEW);
+        cancel.setLeavesQty(0);
+        cancel.setCumQty(order.getExecuted());
+        cancel.setAvgPx(order.getAvgPx());
+        sendExecution(cancel);
+        FlightEvents.cancelReplace(order, "Cancel");
+        orders.update(order);
+        positions.update(order);
+        stopWorking(order);
+    }
+
+    /*
+     * Day orders still working are done for the day, GTC orders keep
+     * working and are carried over to the next day by the StateStore.
+     */
+    public void endOfDay() {
+        for (Order order : getWorkingOrders()) {
+            if (order.getFIXTif() != TimeInForce.GOOD_TILL_CANCEL) {
+                dfd(order);
+            }
+        }
+    }
+
+    /*
+     * Puts restored working orders in line for the executor, which
+     * submits them to the fill engine when there is one, or has them
+     * crossed once the session is logged on.  Either way a restored
+     * order that is marketable at once gets its fills sent.
+     */
+    public void restoreWorking() {
+        for (Order order : getWorkingOrders()) {
+            if (crossingEngine != null) {
+                synchronized (restoredToCross) {
+                    restoredToCross.add(order);
+                }
+            } else {
+                order.setQueuedNanos(System.nanoTime());
+                orders.queue(order);
+            }
+        }
+    }
+
+    private void crossRestored() {
+        if (crossingEngine == null) return;
+        List<Order> restored;
+        synchronized (restoredToCross) {
+            if (restoredToCross.isEmpty()) return;
+            restored = new ArrayList<Order>(restoredToCross);
+            restoredToCross.clear();
+        }
+        for (Order order : restored) {
+            // canceled or replaced while the session was down
+            if (!order.isDone() && order.getOpen() > 0) cross(order);
+        }
+    }
+
+    /*
+     * Orders with quantity left that no cancel or replace has closed,
+     * leaving out the cancel and replace requests themselves.
+     */
+    public List<Order> getWorkingOrders() {
+        List<Order> snapshot = orders.getSnapshot();
+        Set<String> closed = new HashSet<String>();
+        for (Order order : snapshot) {
+            char status = order.getFIXStatus();
+            if (order.getOrigClientID() != null
+                    && (status == OrdStatus.CANCELED
+                        || status == OrdStatus.REPLACED)) {
+                closed.add(order.getOrigClientID());
+            }
+        }
+        List<Order> working = new ArrayList<Order>();
+        for (Order order : snapshot) {
+            if (!order.isDone()
+                    && order.getOpen() > 0
+                    && !order.isReceivedCancel()
+                    && !order.isReceivedReplace()
+                    && !order.isRejectedCancelReplace()
+                    && !closed.contains(order.getClientID())) {
+                working.add(order);
+            }
+        }
+        return working;
+    }
+
     public void bust(Execution execution) {
         Execution bust = execution.clone();
         Order order = execution.getOrder();
-        double fillQty = execution.getLastShares();
-        double fillPrice = execution.getLastPx();
-        double executed = order.getExecuted();
+        long fillQty = Fixed.qty(execution.getLastShares());
+        long fillPrice = Fixed.price(execution.getLastPx());
+        long executed = Fixed.qty(order.getExecuted());
         // partial fill
         if (fillQty < executed) {
-            order.setOpen(executed - fillQty);
+            long avgPx = Fixed.avgPx(executed, Fixed.price(order.getAvgPx()),
+                    -fillQty, fillPrice);
+            order.setOpen(Fixed.toQty(
+                    Fixed.qty(order.getQuantity()) - executed + fillQty));
             order.setStatus(OrdStatus.PARTIALLY_FILLED);
-            double avgPx = (order.getAvgPx() * executed
-                         - fillPrice * fillQty)
-                         / (order.getExecuted() - fillQty);
-            order.setAvgPx(avgPx);
-            order.setExecuted(order.getExecuted() - fillQty);
+            order.setAvgPx(Fixed.toPrice(avgPx));
+            order.setExecuted(Fixed.toQty(executed - fillQty));
             // full or over execution
         } else {
             order.setOpen(order.getQuantity());
@@ -424,7 +946,8 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
             order.setAvgPx(0);
             order.setExecuted(0);
         }
-        orders.update();
+        orders.update(order);
+        positions.fill(order, -Math.min(fillQty, executed), fillPrice);
         // update execution
         bust.setExecTranType(ExecTransType.CANCEL);
         bust.setLeavesQty(order.getOpen());
@@ -436,25 +959,28 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
     public void correct(Execution correction) {
         Order order = correction.getOrder();
         Execution original = executions.getExecution(correction.getRefID());
+        if (original == null) {
+            System.out.println("Execution " + correction.getRefID()
+                    + " is no longer cached, correction not sent");
+            return;
+        }
 
-        double fillQty = correction.getLastShares();
-        double oldQty = original.getLastShares();
+        long fillQty = Fixed.qty(correction.getLastShares());
+        long oldQty = Fixed.qty(original.getLastShares());
 
-        double fillPrice = correction.getLastPx();
-        double oldPrice = original.getLastPx();
+        long fillPrice = Fixed.price(correction.getLastPx());
+        long oldPrice = Fixed.price(original.getLastPx());
 
-        double executed = order.getExecuted();
-        double ordered = order.getQuantity();
+        long executed = Fixed.qty(order.getExecuted());
+        long ordered = Fixed.qty(order.getQuantity());
 
-        double newCumQty = executed - oldQty + fillQty;
-        double avgPx = (order.getAvgPx() * executed
-                     - oldPrice * oldQty
-                     + fillPrice * fillQty)
-                     / newCumQty;
+        long newCumQty = executed - oldQty + fillQty;
+        long avgPx = Fixed.avgPx(executed, Fixed.price(order.getAvgPx()),
+                -oldQty, oldPrice, fillQty, fillPrice);
 
         // partial fill
         if (newCumQty < ordered) {
-            order.setOpen(ordered - newCumQty);
+            order.setOpen(Fixed.toQty(ordered - newCumQty));
             order.setStatus(OrdStatus.PARTIALLY_FILLED);
         // full or over execution
         } else {
@@ -462,9 +988,11 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
             order.setStatus(OrdStatus.FILLED);
         }
 
-        order.setAvgPx(avgPx);
-        order.setExecuted(newCumQty);
-        orders.update();
+        order.setAvgPx(Fixed.toPrice(avgPx));
+        order.setExecuted(Fixed.toQty(newCumQty));
+        orders.update(order);
+        positions.fill(order, -oldQty, oldPrice);
+        positions.fill(order, fillQty, fillPrice);
 
         // update execution
         correction.setExecTranType(ExecTransType.CORRECT);
@@ -509,6 +1037,18 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
     }
 
     public void sendExecution(Execution execution) {
+        long start = System.nanoTime();
+        quickfix.fix42.ExecutionReport report = buildExecutionReport(execution);
+        stageLatency.record(StageLatency.REPORT_BUILD, start);
+        start = System.nanoTime();
+        sendMessage(report);
+        stageLatency.record(StageLatency.SEND, start);
+        executions.add(execution);
+        metrics.executionSent();
+    }
+
+    public quickfix.fix42.ExecutionReport buildExecutionReport(
+            Execution execution) {
         Order order = execution.getOrder();
 
         // *** Required fields ***
@@ -589,15 +1129,15 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
             executionReport.setString(LIQUIDITY_FLAG_FIELD, LIQUIDITY_FLAG_VALUE); // Add optional User Defined LiquidityFlag
         }
 
-        // *** Send message ***
-        sendMessage(executionReport);
-        executions.add(execution);
+        return executionReport;
     }
 
     // Executor methods
-    public void startExecutor(Integer delay, Integer partials, QuoteService quoteService) {
+    // The delay between fills is in microseconds
+    public void startExecutor(long delayMicros, Integer partials, QuoteService quoteService) {
         try {
-            executor = new Executor(delay, partials, quoteService);
+            pacer.reset();
+            executor = new Executor(delayMicros, partials, quoteService);
             executorThread = new Thread(executor);
             executorThread.start();
         } catch (Exception e) {
@@ -607,32 +1147,76 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
 
     public void stopExecutor() {
         executor.stopExecutor();
+        // orders being worked stop with the executor
+        for (Schedule schedule : scheduled.values()) {
+            schedule.stop();
+        }
+        scheduled.clear();
         executorThread.interrupt();
         try {
             executorThread.join();
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
+        System.out.println(String.format(
+                "Executor sent %d fills at %.1f/s, requested %s",
+                pacer.getCount(), pacer.getActualRate(),
+                pacer.getRequestedRate() == 0 ? "no limit"
+                : String.format("%.1f/s", pacer.getRequestedRate())));
     }
 
-    public void setNewExecutorDelay(Integer delay) {
+    public boolean isExecutorStarted() {
+        return executorStarted;
+    }
+
+    public void setNewExecutorDelay(long delayMicros) {
         if (executorStarted) {
-            executor.setDelay(delay);
+            executor.setDelay(delayMicros);
         }
     }
 
+    public Pacer getPacer() {
+        return pacer;
+    }
+
+    // null unless FIXimulatorVenueEmulation is on
+    public VenueEmulator getVenue() {
+        return venue;
+    }
+
     public void setNewExecutorPartials(Integer partials) {
         if (executorStarted) {
             executor.setPartials(partials);
         }
     }
 
+    // A FillStrategy working an order, one slice at a time
+    private static class Schedule {
+        private final Order order;
+        private final FillStrategy strategy;
+        private final long startPrice;
+        private int slice = 0;
+        private volatile boolean stopped = false;
+        private ScheduledFuture<?> future = null;
+
+        Schedule(Order order, FillStrategy strategy, long startPrice) {
+            this.order = order;
+            this.strategy = strategy;
+            this.startPrice = startPrice;
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            if (future != null) future.cancel(false);
+        }
+    }
+
     public class Executor implements Runnable {
-        private Integer delay;
+        private volatile long delay;
         private Integer partials;
         private QuoteService quoteService;
 
-        public Executor(Integer delay, Integer partials, QuoteService quoteService) {
+        public Executor(long delay, Integer partials, QuoteService quoteService) {
             executorStarted = true;
             this.partials = partials;
             this.delay = delay;
@@ -640,29 +1224,38 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
         }
 
         public void run() {
-            executorStatus.setIcon(greenIcon);
+            if (executorStatus != null) executorStatus.setIcon(greenIcon);
             while (executorStarted) {
                 if (connected) {
                     while (orders.haveOrdersToFill()) {
                         Order order = orders.getOrderToFill();
-                        acknowledge(order);
+                        stageLatency.record(StageLatency.QUEUE_WAIT,
+                                order.getQueuedNanos());
+                        // restored orders were acknowledged before
+                        if (order.isReceivedOrder()) acknowledge(order);
                         fill(order);
                     }
                 }
                 // No orders to fill, check again in 5 seconds
+                long sleep = 5000;
+                if (fillEngine != null
+                        && !fillEngine.getRestingSymbols().isEmpty()) {
+                    if (connected) reprice();
+                    sleep = getSettingLong("FIXimulatorBookPriceInterval", 1000);
+                }
                 try {
-                    Thread.sleep(5000);
+                    Thread.sleep(sleep);
                 } catch (InterruptedException e) {
                 }
             }
-            executorStatus.setIcon(redIcon);
+            if (executorStatus != null) executorStatus.setIcon(redIcon);
         }
 
         public void stopExecutor() {
             executorStarted = false;
         }
 
-        public void setDelay(Integer delay) {
+        public void setDelay(long delay) {
             this.delay = delay;
         }
 
@@ -673,79 +1266,204 @@ public class FIXimulatorApplication extends MessageCracker implements Applicatio
         public void fill(Order order) {
             int pricePrecision = getSettingLong("FIXimulatorPricePrecision", 4);
 
-            double fillQty = Math.floor(order.getQuantity() / partials);
-            double fillPrice;
-            try {
-                Quote quote = quoteService.getQuote(order.getSymbol());
-                fillPrice = quote.getLast().getValue().doubleValue();
-            } catch (Exception ignored) {
-                // Random price
-                final double factor = Math.pow(10, pricePrecision);
-                fillPrice = Math.round(random.nextDouble() * 100 * factor) / factor;
+            char tif = order.getFIXTif();
+            boolean immediate = tif == TimeInForce.IMMEDIATE_OR_CANCEL
+                    || tif == TimeInForce.FILL_OR_KILL;
+
+            if (fillEngine != null) {
+                String symbol = order.getSymbol();
+                sendFills(fillEngine.price(symbol, lookupPrice(symbol)), true);
+                sendFills(fillEngine.submit(order), !immediate);
+                if (immediate && order.getOpen() > 0) cancelUnfilled(order);
+                return;
             }
 
-            char ordStatus;
-            char execType;
+            // whole shares per partial, at least one
+            long fillQty = Math.max(Fixed.QTY_SCALE, Fixed.wholeShares(
+                    Fixed.qty(order.getQuantity()) / partials));
+            long fillPrice = lookupPrice(order.getSymbol());
+            if (fillPrice == 0) {
+                // Random price
+                fillPrice = Fixed.round((long)(random.nextDouble()
+                        * 100 * Fixed.PRICE_SCALE), pricePrecision);
+            }
 
-            if (fillQty == 0) {
-                fillQty = 1;
+            // Without a book everything is available at once, an IOC
+            // order takes one partial and a FOK order the whole order
+            if (immediate) {
+                long open = Fixed.qty(order.getOpen());
+                if (tif == TimeInForce.IMMEDIATE_OR_CANCEL) {
+                    open = Math.min(open, fillQty);
+                }
+                sendFill(order, open, fillPrice, pricePrecision);
+                if (order.getOpen() > 0) cancelUnfilled(order);
+                return;
             }
-            for (int i = 0; i < partials; i++) {
-                double open = order.getOpen();
-                if (open > 0) {
-                    double priorQty = order.getExecuted();
-                    double priorAvg = order.getAvgPx();
-                    double thisAvg = ((fillQty * fillPrice)
-                                      + (priorQty * priorAvg))
-                                     / (priorQty + fillQty);
-
-                    double factor = Math.pow(10, pricePrecision);
-                    thisAvg = Math.round(thisAvg * factor) / factor;
-
-                    if (fillQty < open && i != partials - 1) {
-                        // send partial
-                        ordStatus = OrdStatus.PARTIALLY_FILLED;
-                        execType = ExecType.PARTIAL_FILL;
-                    } else {
-                        // send full
-                        fillQty = open;
-                        ordStatus = OrdStatus.FILLED;
-                        execType = ExecType.FILL;
-                    }
 
-                    // update order
-                    updateOrder(order, open - fillQty, order.getExecuted() + fillQty, thisAvg, ordStatus);
+            Schedule schedule = new Schedule(order,
+                    strategies.getStrategy(order), fillPrice);
+            scheduled.put(order.getID(), schedule);
+            schedule(schedule);
+        }
 
-                    // create execution
-                    Execution execution = createExecution(order, execType, thisAvg, fillQty, fillPrice);
+        /*
+         * Asks the strategy for the next slice and has the scheduler
+         * fill it, so a schedule only holds a thread while it fills.
+         */
+        private void schedule(final Schedule schedule) {
+            long open = Fixed.qty(schedule.order.getOpen());
+            FillStrategy.Slice next = open <= 0 ? null : schedule.strategy
+                    .next(schedule.order, schedule.slice, open, partials,
+                          delay);
+            synchronized (schedule) {
+                if (next == null || schedule.stopped) {
+                    scheduled.remove(schedule.order.getID(), schedule);
+                    return;
+                }
+                final long qty = next.getQty();
+                long delayNanos =
+                        TimeUnit.MICROSECONDS.toNanos(next.getDelay());
+                final long due = System.nanoTime() + delayNanos;
+                // the scheduler overshoots a short delay by about as much
+                // again, so the pacer waits it out on the scheduler thread
+                schedule.future = scheduler.schedule(new Runnable() {
+                    public void run() {
+                        pacer.pause(due - System.nanoTime());
+                        fillSlice(schedule, qty);
+                    }
+                }, delayNanos < SCHEDULED_DELAY_NANOS ? 0 : delayNanos,
+                        TimeUnit.NANOSECONDS);
+            }
+        }
 
-                    sendExecution(execution);
+        /*
+         * Quotes are looked up for every slice after the first, the
+         * price the order started with is used when there is none.
+         */
+        private void fillSlice(Schedule schedule, long qty) {
+            Order order = schedule.order;
+            try {
+                // stopped, done, or the session or executor went away
+                if (schedule.stopped || !connected || !executorStarted
+                        || DONE_STATUSES.indexOf(order.getFIXStatus()) >= 0) {
+                    scheduled.remove(order.getID(), schedule);
+                    return;
                 }
-                try {
-                    Thread.sleep(delay.longValue());
-                } catch (InterruptedException e) {
+                long price = schedule.startPrice;
+                if (schedule.slice > 0) {
+                    price = lookupPrice(order.getSymbol());
+                    if (price == 0) price = schedule.startPrice;
+                }
+                long open = Fixed.qty(order.getOpen());
+                if (qty > 0) {
+                    sendFill(order, Math.min(qty, open), price,
+                            getSettingLong("FIXimulatorPricePrecision", 4));
                 }
+                schedule.slice++;
+                schedule(schedule);
+            } catch (RuntimeException e) {
+                scheduled.remove(order.getID(), schedule);
+                e.printStackTrace();
+            }
+        }
+
+        // New prices for the symbols with resting orders
+        private void reprice() {
+            for (String symbol : fillEngine.getRestingSymbols()) {
+                sendFills(fillEngine.price(symbol, lookupPrice(symbol)), true);
+            }
+        }
+
+        private void sendFills(List<Fill> fills, boolean paced) {
+            int pricePrecision = getSettingLong("FIXimulatorPricePrecision", 4);
+            for (Fill fill : fills) {
+                sendFill(fill.getOrder(), fill.getQty(), fill.getPrice(),
+                        pricePrecision);
+                if (paced) pacer.pause(TimeUnit.MICROSECONDS.toNanos(delay));
             }
         }
 
-        private Execution createExecution(Order order, char execType, double thisAvg, double fillQty, double fillPrice) {
+        /*
+         * The last price from the quote service.  Without one the fill
+         * engine walks its own price a few ticks at random, and 0 is
+         * returned when there is nothing to walk from.
+         */
+        private long lookupPrice(String symbol) {
+            long lookupStart = System.nanoTime();
+            try {
+                Quote quote = quoteService.getQuote(symbol);
+                long lookupTime = System.nanoTime() - lookupStart;
+                metrics.quoteLookup(lookupTime);
+                stageLatency.record(StageLatency.QUOTE_FETCH, lookupStart);
+                FlightEvents.quoteLookup(symbol, lookupTime, true);
+                return Fixed.price(quote.getLast().getValue().doubleValue());
+            } catch (Exception ignored) {
+                FlightEvents.quoteLookup(symbol,
+                        System.nanoTime() - lookupStart, false);
+            }
+            if (fillEngine == null) return 0;
+            long last = fillEngine.getPrice(symbol);
+            if (last == 0) {
+                return Fixed.round((long)(random.nextDouble()
+                        * 100 * Fixed.PRICE_SCALE), 2);
+            }
+            long walked = last + (random.nextInt(7) - 3) * fillEngine.getTickSize();
+            return Math.max(fillEngine.getTickSize(), walked);
+        }
+
+        private void sendFill(Order order, long thisQty, long fillPrice,
+                int pricePrecision) {
+            pacer.acquire();
+            long open = Fixed.qty(order.getOpen());
+            long priorQty = Fixed.qty(order.getExecuted());
+            long priorAvg = Fixed.price(order.getAvgPx());
+            char ordStatus;
+            char execType;
+            if (thisQty < open) {
+                // send partial
+                ordStatus = OrdStatus.PARTIALLY_FILLED;
+                execType = ExecType.PARTIAL_FILL;
+            } else {
+                // send full
+                thisQty = open;
+                ordStatus = OrdStatus.FILLED;
+                execType = ExecType.FILL;
+            }
+            // the order keeps the full precision so the rounding of the
+            // reported AvgPx does not add up over the partials
+            long avgPx = Fixed.avgPx(priorQty, priorAvg, thisQty, fillPrice);
+
+            // update order
+            updateOrder(order, open - thisQty, priorQty + thisQty,
+                    avgPx, ordStatus);
+            positions.fill(order, thisQty, fillPrice);
+
+            // create execution
+            Execution execution = createExecution(order, execType,
+                    Fixed.round(avgPx, pricePrecision), thisQty, fillPrice);
+
+            sendExecution(execution);
+            FlightEvents.fillSent(execution);
+        }
+
+        private Execution createExecution(Order order, char execType, long thisAvg, long fillQty, long fillPrice) {
             Execution execution = new Execution(order);
             execution.setExecType(execType);
             execution.setExecTranType(ExecTransType.NEW);
             execution.setLeavesQty(order.getOpen());
-            execution.setCumQty(order.getQuantity() - order.getOpen());
-            execution.setAvgPx(thisAvg);
-            execution.setLastShares(fillQty);
-            execution.setLastPx(fillPrice);
+            execution.setCumQty(order.getExecuted());
+            execution.setAvgPx(Fixed.toPrice(thisAvg));
+            execution.setLastShares(Fixed.toQty(fillQty));
+            execution.setLastPx(Fixed.toPrice(fillPrice));
             return execution;
         }
 
-        private void updateOrder(Order order, double open, double executed, double thisAvg, char status) {
-            order.setOpen(open);
-            order.setExecuted(executed);
-            order.setAvgPx(thisAvg);
+        private void updateOrder(Order order, long open, long executed, long thisAvg, char status) {
+            order.setOpen(Fixed.toQty(open));
+            order.setExecuted(Fixed.toQty(executed));
+            order.setAvgPx(Fixed.toPrice(thisAvg));
             order.setStatus(status);
-            orders.update();
+            orders.update(order);
         }
 
         private int getSettingLong(String key, int defaultValue) {
@@ -0,0 +1,36 @@
+/*
+ * File     : Fill.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : A quantity of an order filled at a price by one of the
+ *            engines, in Fixed units.  The application turns it into
+ *            an Execution.
+ *
+ */
+
+package org.fiximulator.core;
+
+public class Fill {
+    private final Order order;
+    private final long qty;
+    private final long price;
+
+    public Fill(Order order, long qty, long price) {
+        this.order = order;
+        this.qty = qty;
+        this.price = price;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public long getQty() {
+        return qty;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+}
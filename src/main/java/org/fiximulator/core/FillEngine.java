@@ -0,0 +1,203 @@
+/*
+ * File     : FillEngine.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Fills orders against a synthetic depth-of-book kept for
+ *            each symbol around a reference price.  The book has a
+ *            fixed number of levels a tick apart on either side, each
+ *            with the same size, and unlimited size past the last one.
+ *
+ *            Market orders walk the levels until they are done,
+ *            marketable limits walk them up to their limit and the
+ *            rest of a limit order waits in the book until the price
+ *            moves through it.  The resting orders are kept sorted by
+ *            limit, so a price update only looks at the orders it
+ *            actually crosses.  IOC and FOK orders never rest, and an
+ *            FOK order is only filled when the book can fill all of it.
+ *
+ *            All prices and quantities are Fixed values.
+ *
+ */
+
+package org.fiximulator.core;
+
+import quickfix.field.OrdType;
+import quickfix.field.Side;
+import quickfix.field.TimeInForce;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class FillEngine {
+    private final int levels;
+    private final long levelSize;
+    private final long tickSize;
+    private Map<String, SyntheticBook> books =
+            new HashMap<String, SyntheticBook>();
+
+    public FillEngine(int levels, long levelSize, long tickSize) {
+        this.levels = levels;
+        this.levelSize = levelSize;
+        this.tickSize = tickSize;
+    }
+
+    /*
+     * Fills what the book allows right away and rests the remainder of
+     * a limit order.  An order for a symbol without a price yet rests
+     * until the first price update.
+     */
+    public synchronized List<Fill> submit(Order order) {
+        List<Fill> fills = new ArrayList<Fill>();
+        SyntheticBook book = book(order.getSymbol());
+        long remaining = Fixed.qty(order.getOpen());
+        boolean fok = order.getFIXTif() == TimeInForce.FILL_OR_KILL;
+        if (fok && (book.reference == 0
+                || book.take(order, remaining, null) > 0)) {
+            return fills;
+        }
+        if (book.reference != 0) {
+            remaining = book.take(order, remaining, fills);
+        }
+        if (remaining > 0 && !isImmediate(order)) book.rest(order, remaining);
+        return fills;
+    }
+
+    // Moves the reference price and fills the resting orders it crosses
+    public synchronized List<Fill> price(String symbol, long price) {
+        SyntheticBook book = book(symbol);
+        book.reprice(price);
+        List<Fill> fills = new ArrayList<Fill>();
+        book.cross(fills);
+        return fills;
+    }
+
+    public synchronized long getPrice(String symbol) {
+        SyntheticBook book = books.get(symbol);
+        return book == null ? 0 : book.reference;
+    }
+
+    public synchronized boolean remove(Order order) {
+        SyntheticBook book = books.get(order.getSymbol());
+        return book != null && book.remove(order);
+    }
+
+    public synchronized Set<String> getRestingSymbols() {
+        Set<String> symbols = new TreeSet<String>();
+        for (Map.Entry<String, SyntheticBook> entry : books.entrySet()) {
+            if (entry.getValue().resting() > 0) symbols.add(entry.getKey());
+        }
+        return symbols;
+    }
+
+    public long getTickSize() {
+        return tickSize;
+    }
+
+    private SyntheticBook book(String symbol) {
+        SyntheticBook book = books.get(symbol);
+        if (book == null) {
+            book = new SyntheticBook();
+            books.put(symbol, book);
+        }
+        return book;
+    }
+
+    private static boolean isBuy(Order order) {
+        return order.getFIXSide() == Side.BUY;
+    }
+
+    public static boolean isImmediate(Order order) {
+        return order.getFIXTif() == TimeInForce.IMMEDIATE_OR_CANCEL
+                || order.getFIXTif() == TimeInForce.FILL_OR_KILL;
+    }
+
+    // limit orders without a price are taken as market orders
+    private static long limitOf(Order order) {
+        if (order.getFIXType() != OrdType.LIMIT || order.getLimit() <= 0) {
+            return 0;
+        }
+        return Fixed.price(order.getLimit());
+    }
+
+    private class SyntheticBook {
+        private long reference = 0;
+        // size taken from each level since the last price update
+        private final long[] askTaken = new long[levels];
+        private final long[] bidTaken = new long[levels];
+        private final PriceLevels buys = new PriceLevels(true);
+        private final PriceLevels sells = new PriceLevels(false);
+
+        void reprice(long price) {
+            reference = price;
+            Arrays.fill(askTaken, 0);
+            Arrays.fill(bidTaken, 0);
+        }
+
+        /*
+         * Walks the opposite side from the touch, a buy lifts offers at
+         * reference + k ticks and a sell hits bids at reference - k.
+         * Returns what could not be filled within the limit, without
+         * taking anything from the book when there is no fill list.
+         */
+        long take(Order order, long remaining, List<Fill> fills) {
+            boolean buy = isBuy(order);
+            long limit = limitOf(order);
+            long[] taken = buy ? askTaken : bidTaken;
+            for (int level = 0; remaining > 0; level++) {
+                long price = buy ? reference + (level + 1) * tickSize
+                                 : reference - (level + 1) * tickSize;
+                if (price <= 0) break;
+                if (limit != 0 && (buy ? price > limit : price < limit)) break;
+                long available = level < levels
+                        ? levelSize - taken[level] : remaining;
+                if (available <= 0) continue;
+                long qty = Math.min(available, remaining);
+                remaining -= qty;
+                if (fills == null) continue;
+                if (level < levels) taken[level] += qty;
+                fills.add(new Fill(order, qty, price));
+            }
+            return remaining;
+        }
+
+        void rest(Order order, long remaining) {
+            (isBuy(order) ? buys : sells).add(order, limitOf(order), remaining);
+        }
+
+        /*
+         * Only the orders at the front of each side can cross, so this
+         * stops at the first one the new price does not reach.  Market
+         * orders that came in before the first price go first.
+         */
+        void cross(List<Fill> fills) {
+            cross(buys, true, fills);
+            cross(sells, false, fills);
+        }
+
+        private void cross(PriceLevels side, boolean buy, List<Fill> fills) {
+            long touch = buy ? reference + tickSize : reference - tickSize;
+            PriceLevels.Resting next;
+            while ((next = side.best()) != null) {
+                long limit = side.bestPrice();
+                if (limit != 0 && (buy ? limit < touch : limit > touch)) break;
+                next.remaining = take(next.order, next.remaining, fills);
+                if (next.remaining > 0) break;
+                side.removeBest();
+            }
+        }
+
+        boolean remove(Order order) {
+            return (isBuy(order) ? buys : sells).remove(order, limitOf(order));
+        }
+
+        int resting() {
+            return buys.size() + sells.size();
+        }
+    }
+}
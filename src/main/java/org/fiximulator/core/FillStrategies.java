@@ -0,0 +1,195 @@
+/*
+ * File     : FillStrategies.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : The FillStrategy implementations that come with the
+ *            simulator and the lookup of the strategy for an order.
+ *
+ *            equal      partials equal slices, delay apart
+ *            twap       partials equal slices spread evenly over
+ *                       FIXimulatorTwapHorizon ms
+ *            vwap       one slice per bucket of FIXimulatorVwapCurve,
+ *                       sized by the bucket's share of the day's
+ *                       volume, spread over FIXimulatorVwapHorizon ms
+ *            poisson    slices of a random size around the equal slice
+ *                       size, with exponential gaps averaging delay
+ *            immediate  the whole order at once
+ *
+ *            FIXimulatorFillStrategy names the strategy for all orders,
+ *            FIXimulatorFillStrategy.Account.<Account> and then
+ *            FIXimulatorFillStrategy.Symbol.<Symbol> override it.
+ *
+ */
+
+package org.fiximulator.core;
+
+import quickfix.SessionSettings;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class FillStrategies {
+    private static final String DEFAULT = "equal";
+    // a rough U-shaped intraday volume curve
+    private static final String DEFAULT_CURVE =
+            "12,8,6,5,4,4,4,4,5,6,8,14";
+
+    private SessionSettings settings;
+    private Map<String, FillStrategy> strategies =
+            new HashMap<String, FillStrategy>();
+    // strategy names looked up by account or symbol
+    private Map<String, String> names = new HashMap<String, String>();
+
+    public FillStrategies(SessionSettings settings) {
+        this.settings = settings;
+        // the horizons are set in milliseconds
+        long twapHorizon = getLong("FIXimulatorTwapHorizon", 60000) * 1000;
+        long vwapHorizon = getLong("FIXimulatorVwapHorizon", 60000) * 1000;
+        String curve = DEFAULT_CURVE;
+        try {
+            curve = settings.getString("FIXimulatorVwapCurve");
+        } catch (Exception e) {}
+        strategies.put("equal", new Equal());
+        strategies.put("twap", new Twap(twapHorizon));
+        strategies.put("vwap", new Vwap(vwapHorizon, parseCurve(curve)));
+        strategies.put("poisson", new Poisson());
+        strategies.put("immediate", new Immediate());
+    }
+
+    public synchronized FillStrategy getStrategy(Order order) {
+        String name = null;
+        if (order.getAccount() != null) {
+            name = name("Account." + order.getAccount());
+        }
+        if (name == null && order.getSymbol() != null) {
+            name = name("Symbol." + order.getSymbol());
+        }
+        if (name == null) name = name(null);
+        if (name == null) name = DEFAULT;
+        FillStrategy strategy = strategies.get(name.toLowerCase());
+        if (strategy == null) strategy = strategies.get(name);
+        if (strategy == null) {
+            try {
+                strategy = (FillStrategy)Class.forName(name).newInstance();
+            } catch (Exception e) {
+                e.printStackTrace();
+                strategy = strategies.get(DEFAULT);
+            }
+            strategies.put(name, strategy);
+        }
+        return strategy;
+    }
+
+    private String name(String suffix) {
+        String key = suffix == null
+                ? "FIXimulatorFillStrategy"
+                : "FIXimulatorFillStrategy." + suffix;
+        if (names.containsKey(key)) return names.get(key);
+        String name = null;
+        try {
+            name = settings.getString(key).trim();
+        } catch (Exception e) {}
+        names.put(key, name);
+        return name;
+    }
+
+    private long getLong(String key, long defaultValue) {
+        try {
+            return settings.getLong(key);
+        } catch (Exception e) {}
+        return defaultValue;
+    }
+
+    private static double[] parseCurve(String curve) {
+        String[] values = curve.split(",");
+        double[] weights = new double[values.length];
+        double total = 0;
+        for (int i = 0; i < values.length; i++) {
+            weights[i] = Double.parseDouble(values[i].trim());
+            total += weights[i];
+        }
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] /= total;
+        }
+        return weights;
+    }
+
+    // whole shares, at least one
+    private static long sliceQty(long qty) {
+        return Math.max(Fixed.QTY_SCALE, Fixed.wholeShares(qty));
+    }
+
+    public static class Equal implements FillStrategy {
+        public Slice next(Order order, int slice, long open, int partials,
+                long delay) {
+            if (slice >= partials) return new Slice(delay, open);
+            long qty = sliceQty(Fixed.qty(order.getQuantity()) / partials);
+            if (slice == partials - 1) qty = open;
+            return new Slice(slice == 0 ? 0 : delay, qty);
+        }
+    }
+
+    public static class Twap implements FillStrategy {
+        private final long horizon;
+
+        public Twap(long horizon) {
+            this.horizon = horizon;
+        }
+
+        public Slice next(Order order, int slice, long open, int partials,
+                long delay) {
+            long interval = horizon / Math.max(1, partials - 1);
+            if (slice >= partials - 1) {
+                return new Slice(slice == 0 ? 0 : interval, open);
+            }
+            long qty = sliceQty(Fixed.qty(order.getQuantity()) / partials);
+            return new Slice(slice == 0 ? 0 : interval, qty);
+        }
+    }
+
+    public static class Vwap implements FillStrategy {
+        private final long horizon;
+        private final double[] weights;
+
+        public Vwap(long horizon, double[] weights) {
+            this.horizon = horizon;
+            this.weights = weights;
+        }
+
+        public Slice next(Order order, int slice, long open, int partials,
+                long delay) {
+            long interval = horizon / weights.length;
+            long wait = slice == 0 ? 0 : interval;
+            if (slice >= weights.length - 1) return new Slice(wait, open);
+            long qty = sliceQty((long)(Fixed.qty(order.getQuantity())
+                    * weights[slice]));
+            return new Slice(wait, qty);
+        }
+    }
+
+    public static class Poisson implements FillStrategy {
+        private final Random random = new Random();
+
+        public Slice next(Order order, int slice, long open, int partials,
+                long delay) {
+            double gap;
+            double size;
+            synchronized (random) {
+                gap = -Math.log(1.0 - random.nextDouble()) * delay;
+                size = 0.5 + random.nextDouble();
+            }
+            long qty = sliceQty((long)(Fixed.qty(order.getQuantity())
+                    / partials * size));
+            return new Slice(slice == 0 ? 0 : Math.round(gap), qty);
+        }
+    }
+
+    public static class Immediate implements FillStrategy {
+        public Slice next(Order order, int slice, long open, int partials,
+                long delay) {
+            return new Slice(0, open);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * File     : FillStrategy.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Decides how the executor works an order, one slice at a
+ *            time.  The executor asks for the next slice whenever the
+ *            previous one has been filled and schedules it on a shared
+ *            scheduler, so a strategy only does arithmetic and never
+ *            sleeps.  Implementations must be thread safe, one instance
+ *            serves every order that uses it.
+ *
+ *            Custom strategies are named by their class name in the
+ *            settings and need a public no-argument constructor.
+ *
+ */
+
+package org.fiximulator.core;
+
+public interface FillStrategy {
+
+    /*
+     * The slice to fill after the given number of filled slices, or
+     * null to stop.  The quantities are Fixed, the executor never fills
+     * more than the open quantity and a slice for the whole open
+     * quantity finishes the order.  Partials and delay are the
+     * executor's current settings, the delay in microseconds.
+     */
+    Slice next(Order order, int slice, long open, int partials, long delay);
+
+    public static final class Slice {
+        private final long delay;
+        private final long qty;
+
+        public Slice(long delay, long qty) {
+            this.delay = delay;
+            this.qty = qty;
+        }
+
+        // microseconds to wait before the slice is filled
+        public long getDelay() {
+            return delay;
+        }
+
+        public long getQty() {
+            return qty;
+        }
+    }
+}
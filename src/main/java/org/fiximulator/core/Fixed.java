@@ -0,0 +1,126 @@
+/*
+ * File     : Fixed.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Fixed-point arithmetic for prices and quantities.  Prices
+ *            are longs in units of 1e-8 and quantities in units of
+ *            1e-2, so sums and differences are exact and CumQty and
+ *            LeavesQty always add back up to OrderQty.  Products are
+ *            done in long arithmetic and only fall back to BigInteger
+ *            when they would overflow.
+ *
+ */
+
+package org.fiximulator.core;
+
+import java.math.BigInteger;
+
+public final class Fixed {
+    public static final int PRICE_DECIMALS = 8;
+    public static final int QTY_DECIMALS = 2;
+    public static final long PRICE_SCALE = 100000000L;
+    public static final long QTY_SCALE = 100L;
+
+    private static final long[] POWERS = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+        100000000L
+    };
+
+    private Fixed() {}
+
+    public static long price(double value) {
+        return Math.round(value * PRICE_SCALE);
+    }
+
+    public static long qty(double value) {
+        return Math.round(value * QTY_SCALE);
+    }
+
+    public static double toPrice(long price) {
+        return (double)price / PRICE_SCALE;
+    }
+
+    public static double toQty(long qty) {
+        return (double)qty / QTY_SCALE;
+    }
+
+    // Rounds a price half away from zero to the given number of decimals
+    public static long round(long price, int decimals) {
+        if (decimals >= PRICE_DECIMALS) return price;
+        long unit = POWERS[PRICE_DECIMALS - Math.max(0, decimals)];
+        return divide(price, unit) * unit;
+    }
+
+    public static long wholeShares(long qty) {
+        return qty / QTY_SCALE * QTY_SCALE;
+    }
+
+    // a * b / c rounded half away from zero
+    public static long mulDiv(long a, long b, long c) {
+        if (fits(a, b)) return divide(a * b, c);
+        return bigDivide(big(a).multiply(big(b)), c);
+    }
+
+    // a * b / c rounded half away from zero, past the long range
+    public static BigInteger mulDiv(BigInteger a, long b, long c) {
+        BigInteger n = a.multiply(big(b));
+        BigInteger[] division = n.divideAndRemainder(big(c));
+        BigInteger quotient = division[0];
+        BigInteger twice = division[1].abs().shiftLeft(1);
+        if (twice.compareTo(big(Math.abs(c))) >= 0) {
+            quotient = quotient.add(big(n.signum() * Long.signum(c)));
+        }
+        return quotient;
+    }
+
+    // The average price of two lots, a negative quantity takes a lot out
+    public static long avgPx(long qty1, long px1, long qty2, long px2) {
+        long qty = qty1 + qty2;
+        if (qty == 0) return 0;
+        if (fits(qty1, px1) && fits(qty2, px2)) {
+            long notional1 = qty1 * px1;
+            long notional2 = qty2 * px2;
+            long notional = notional1 + notional2;
+            // no overflow unless both addends share a sign the sum lacks
+            if (((notional1 ^ notional) & (notional2 ^ notional)) >= 0) {
+                return divide(notional, qty);
+            }
+        }
+        return bigDivide(big(qty1).multiply(big(px1))
+                .add(big(qty2).multiply(big(px2))), qty);
+    }
+
+    public static long avgPx(long qty1, long px1, long qty2, long px2,
+            long qty3, long px3) {
+        long qty = qty1 + qty2 + qty3;
+        if (qty == 0) return 0;
+        return bigDivide(big(qty1).multiply(big(px1))
+                .add(big(qty2).multiply(big(px2)))
+                .add(big(qty3).multiply(big(px3))), qty);
+    }
+
+    private static long bigDivide(BigInteger n, long d) {
+        return mulDiv(n, 1, d).longValue();
+    }
+
+    // n / d rounded half away from zero
+    private static long divide(long n, long d) {
+        long quotient = n / d;
+        long remainder = n % d;
+        if (Math.abs(remainder) >= Math.abs(d) - Math.abs(remainder)) {
+            quotient += Long.signum(n) * Long.signum(d);
+        }
+        return quotient;
+    }
+
+    // true when a * b cannot overflow a long
+    private static boolean fits(long a, long b) {
+        return Long.numberOfLeadingZeros(Math.abs(a))
+                + Long.numberOfLeadingZeros(Math.abs(b)) > 65;
+    }
+
+    private static BigInteger big(long value) {
+        return BigInteger.valueOf(value);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * File     : FlightEvents.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Emits Java Flight Recorder events for the order lifecycle
+ *            so a recording lines the simulator up with GC and thread
+ *            activity.  The events themselves live in JfrEvents, which
+ *            is only loaded when the JVM has jdk.jfr, so the simulator
+ *            still runs on a JVM without the Flight Recorder.
+ *
+ */
+
+package org.fiximulator.core;
+
+public class FlightEvents {
+    private static final boolean AVAILABLE = isAvailable();
+
+    private FlightEvents() {}
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    public static void orderReceived(Order order, String request) {
+        if (AVAILABLE) JfrEvents.orderReceived(order, request);
+    }
+
+    public static void orderAcknowledged(Order order) {
+        if (AVAILABLE) JfrEvents.orderAcknowledged(order);
+    }
+
+    public static void fillSent(Execution execution) {
+        if (AVAILABLE) JfrEvents.fillSent(execution);
+    }
+
+    public static void cancelReplace(Order order, String action) {
+        if (AVAILABLE) JfrEvents.cancelReplace(order, action);
+    }
+
+    public static void quoteLookup(String symbol, long nanos, boolean found) {
+        if (AVAILABLE) JfrEvents.quoteLookup(symbol, nanos, found);
+    }
+
+    public static void cacheEviction(String cache, int count, long bytes) {
+        if (AVAILABLE && count > 0) JfrEvents.cacheEviction(cache, count, bytes);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * File     : JfrEvents.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : The Flight Recorder event types, only touched through
+ *            FlightEvents.  Each event is checked with isEnabled()
+ *            before its fields are filled in, so nothing is done while
+ *            no recording has the event turned on.
+ *
+ */
+
+package org.fiximulator.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+class JfrEvents {
+    private JfrEvents() {}
+
+    @Name("org.fiximulator.OrderReceived")
+    @Label("Order Received")
+    @Category({ "FIXimulator", "Orders" })
+    static class OrderReceived extends Event {
+        @Label("Request") String request;
+        @Label("ClOrdID") String clOrdID;
+        @Label("OrigClOrdID") String origClOrdID;
+        @Label("Symbol") String symbol;
+        @Label("Quantity") double quantity;
+        @Label("Limit") double limit;
+        @Label("Decode Time") @Timespan long decodeTime;
+    }
+
+    @Name("org.fiximulator.OrderAcknowledged")
+    @Label("Order Acknowledged")
+    @Category({ "FIXimulator", "Orders" })
+    static class OrderAcknowledged extends Event {
+        @Label("ClOrdID") String clOrdID;
+        @Label("Symbol") String symbol;
+        @Label("Quantity") double quantity;
+        @Label("Since Received") @Timespan long sinceReceived;
+    }
+
+    @Name("org.fiximulator.FillSent")
+    @Label("Fill Sent")
+    @Category({ "FIXimulator", "Orders" })
+    static class FillSent extends Event {
+        @Label("ClOrdID") String clOrdID;
+        @Label("Symbol") String symbol;
+        @Label("Exec Type") String execType;
+        @Label("Last Shares") double lastShares;
+        @Label("Last Price") double lastPx;
+        @Label("Cumulative Quantity") double cumQty;
+        @Label("Leaves Quantity") double leavesQty;
+        @Label("Since Received") @Timespan long sinceReceived;
+    }
+
+    @Name("org.fiximulator.CancelReplace")
+    @Label("Cancel/Replace")
+    @Category({ "FIXimulator", "Orders" })
+    static class CancelReplace extends Event {
+        @Label("Action") String action;
+        @Label("ClOrdID") String clOrdID;
+        @Label("OrigClOrdID") String origClOrdID;
+        @Label("Symbol") String symbol;
+        @Label("Quantity") double quantity;
+        @Label("Executed") double executed;
+    }
+
+    @Name("org.fiximulator.QuoteLookup")
+    @Label("Quote Lookup")
+    @Category({ "FIXimulator", "Quotes" })
+    static class QuoteLookup extends Event {
+        @Label("Symbol") String symbol;
+        @Label("Found") boolean found;
+        @Label("Lookup Time") @Timespan long lookupTime;
+    }
+
+    @Name("org.fiximulator.CacheEviction")
+    @Label("Cache Eviction")
+    @Category({ "FIXimulator", "Cache" })
+    static class CacheEviction extends Event {
+        @Label("Cache") String cache;
+        @Label("Count") int count;
+        @Label("Size") @DataAmount long bytes;
+    }
+
+    static void orderReceived(Order order, String request) {
+        OrderReceived event = new OrderReceived();
+        if (!event.isEnabled()) return;
+        event.request = request;
+        event.clOrdID = order.getClientID();
+        event.origClOrdID = order.getOrigClientID();
+        event.symbol = order.getSymbol();
+        event.quantity = order.getQuantity();
+        event.limit = order.getLimit();
+        event.decodeTime = sinceReceived(order);
+        event.commit();
+    }
+
+    static void orderAcknowledged(Order order) {
+        OrderAcknowledged event = new OrderAcknowledged();
+        if (!event.isEnabled()) return;
+        event.clOrdID = order.getClientID();
+        event.symbol = order.getSymbol();
+        event.quantity = order.getQuantity();
+        event.sinceReceived = sinceReceived(order);
+        event.commit();
+    }
+
+    static void fillSent(Execution execution) {
+        FillSent event = new FillSent();
+        if (!event.isEnabled()) return;
+        Order order = execution.getOrder();
+        event.clOrdID = order.getClientID();
+        event.symbol = order.getSymbol();
+        event.execType = execution.getExecType();
+        event.lastShares = execution.getLastShares();
+        event.lastPx = execution.getLastPx();
+        event.cumQty = execution.getCumQty();
+        event.leavesQty = execution.getLeavesQty();
+        event.sinceReceived = sinceReceived(order);
+        event.commit();
+    }
+
+    static void cancelReplace(Order order, String action) {
+        CancelReplace event = new CancelReplace();
+        if (!event.isEnabled()) return;
+        event.action = action;
+        event.clOrdID = order.getClientID();
+        event.origClOrdID = order.getOrigClientID();
+        event.symbol = order.getSymbol();
+        event.quantity = order.getQuantity();
+        event.executed = order.getExecuted();
+        event.commit();
+    }
+
+    static void quoteLookup(String symbol, long nanos, boolean found) {
+        QuoteLookup event = new QuoteLookup();
+        if (!event.isEnabled()) return;
+        event.symbol = symbol;
+        event.found = found;
+        event.lookupTime = nanos;
+        event.commit();
+    }
+
+    static void cacheEviction(String cache, int count, long bytes) {
+        CacheEviction event = new CacheEviction();
+        if (!event.isEnabled()) return;
+        event.cache = cache;
+        event.count = count;
+        event.bytes = bytes;
+        event.commit();
+    }
+
+    // orders restored or created by hand have no receive stamp
+    private static long sinceReceived(Order order) {
+        if (order.getReceivedNanos() == 0) return 0;
+        return System.nanoTime() - order.getReceivedNanos();
+    }
+}
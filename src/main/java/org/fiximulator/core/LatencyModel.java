@@ -0,0 +1,138 @@
+/*
+ * File     : LatencyModel.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Samples the time a venue takes to answer a message, in
+ *            microseconds.  Models are parsed from the settings:
+ *
+ *            fixed:200                      always 200
+ *            uniform:100,500                evenly between 100 and 500
+ *            lognormal:150,0.5              log-normal with a median of
+ *                                           150 and a sigma of 0.5
+ *            percentiles:50=120,99=900,...  replayed from recorded
+ *                                           percentiles, interpolated
+ *                                           between them
+ *
+ *            A plain number is a fixed latency.  Below the lowest
+ *            percentile given the latency is that percentile's.
+ *
+ */
+
+package org.fiximulator.core;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+public abstract class LatencyModel {
+
+    public abstract long sample();
+
+    public static LatencyModel parse(String spec) {
+        spec = spec.trim();
+        int colon = spec.indexOf(':');
+        if (colon < 0) return new Constant(parseMicros(spec));
+        String type = spec.substring(0, colon).trim().toLowerCase();
+        String[] args = spec.substring(colon + 1).split(",");
+        if (type.equals("fixed")) {
+            return new Constant(parseMicros(args[0]));
+        }
+        if (type.equals("uniform")) {
+            return new Uniform(parseMicros(args[0]), parseMicros(args[1]));
+        }
+        if (type.equals("lognormal")) {
+            return new LogNormal(Double.parseDouble(args[0].trim()),
+                    Double.parseDouble(args[1].trim()));
+        }
+        if (type.equals("percentiles")) {
+            TreeMap<Double, Double> points = new TreeMap<Double, Double>();
+            for (String arg : args) {
+                String[] point = arg.split("=");
+                points.put(Double.parseDouble(point[0].trim()) / 100,
+                        Double.parseDouble(point[1].trim()));
+            }
+            return new Percentiles(points);
+        }
+        throw new IllegalArgumentException("Unknown latency model: " + spec);
+    }
+
+    private static long parseMicros(String value) {
+        return Math.max(0, Long.parseLong(value.trim()));
+    }
+
+    public static class Constant extends LatencyModel {
+        private final long micros;
+
+        public Constant(long micros) {
+            this.micros = micros;
+        }
+
+        public long sample() {
+            return micros;
+        }
+    }
+
+    public static class Uniform extends LatencyModel {
+        private final long low;
+        private final long high;
+
+        public Uniform(long low, long high) {
+            this.low = Math.min(low, high);
+            this.high = Math.max(low, high);
+        }
+
+        public long sample() {
+            if (low == high) return low;
+            return ThreadLocalRandom.current().nextLong(low, high + 1);
+        }
+    }
+
+    public static class LogNormal extends LatencyModel {
+        private final double median;
+        private final double sigma;
+
+        public LogNormal(double median, double sigma) {
+            this.median = median;
+            this.sigma = sigma;
+        }
+
+        public long sample() {
+            double gaussian = ThreadLocalRandom.current().nextGaussian();
+            return Math.round(median * Math.exp(sigma * gaussian));
+        }
+    }
+
+    public static class Percentiles extends LatencyModel {
+        private final double[] quantiles;
+        private final double[] values;
+
+        // Quantiles between 0 and 1 mapped to microseconds
+        public Percentiles(TreeMap<Double, Double> points) {
+            quantiles = new double[points.size()];
+            values = new double[points.size()];
+            int i = 0;
+            double floor = 0;
+            for (Map.Entry<Double, Double> point : points.entrySet()) {
+                quantiles[i] = point.getKey();
+                // a latency never falls as the percentile rises
+                floor = Math.max(floor, point.getValue());
+                values[i++] = floor;
+            }
+        }
+
+        public long sample() {
+            double u = ThreadLocalRandom.current().nextDouble();
+            if (u <= quantiles[0]) return Math.round(values[0]);
+            for (int i = 1; i < quantiles.length; i++) {
+                if (u <= quantiles[i]) {
+                    double share = (u - quantiles[i - 1])
+                            / (quantiles[i] - quantiles[i - 1]);
+                    return Math.round(values[i - 1]
+                            + share * (values[i] - values[i - 1]));
+                }
+            }
+            return Math.round(values[values.length - 1]);
+        }
+    }
+}
@@ -4,7 +4,9 @@
  * Author   : Zoltan Feledy
  *
  * Contents : This class is a Set of LogMessage objects with utility
- *            methods to access the individual messages.
+ *            methods to access the individual messages.  With a
+ *            CacheBudget the oldest messages are evicted by the shared
+ *            byte budget instead of FIXimulatorCachedObjects.
  */
 
 package org.fiximulator.core;
@@ -14,13 +16,23 @@ import quickfix.DataDictionary;
 import quickfix.Message;
 import quickfix.SessionID;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
-public class LogMessageSet {
+public class LogMessageSet implements CacheBudget.Evictable {
     private static final long serialVersionUID = 1L;
     private ArrayList<LogMessage> messages = null;
     private MessageTableModel model;
+    private MessageJournal journal = null;
+    private MessageIndex index = new MessageIndex();
     private int messageIndex = 0;
+    private CacheBudget budget = null;
+    private final LongAdder evictions = new LongAdder();
+    // evicted and not journaled, but still in the index
+    private int unindexed = 0;
 
     public LogMessageSet() {
         messages = new ArrayList<LogMessage>();
@@ -28,31 +40,207 @@ public class LogMessageSet {
 
     public void add(Message message, boolean incoming,
                 DataDictionary dictionary, SessionID sessionID) {
-        messageIndex++;
-        LogMessage msg =
-                        new LogMessage(messageIndex, incoming, sessionID,
-                message.toString(), dictionary);
-                messages.add(msg);
+        LogMessage msg;
+        synchronized (this) {
+            messageIndex++;
+            msg = new LogMessage(messageIndex, incoming, sessionID,
+                    message.toString(), dictionary);
+            messages.add(msg);
+            index.add(messageIndex, msg.getRawMessage(),
+                    LogMessage.DEFAULT_DELIMETER);
+            // queued in number order, the journal writes it on its own thread
+            if (journal != null) journal.append(msg);
+            if (budget == null) {
                 int limit = 50;
                 try {
                     limit = (int)FIXimulator.getApplication().getSettings()
                             .getLong("FIXimulatorCachedObjects");
                 } catch (Exception e) {}
-                while (messages.size() > limit) {
-                    messages.remove(0);
+                if (messages.size() > limit) {
+                    evictions.add(messages.size() - limit);
+                    FlightEvents.cacheEviction("messages",
+                            messages.size() - limit, 0);
+                    evicted(messages.size() - limit);
+                    messages.subList(0, messages.size() - limit).clear();
+                    pruneIndex();
                 }
+            }
+        }
+        if (budget != null) budget.charge(this, SizeEstimator.estimate(msg));
         //call back to the model to update
-        model.update();
+        if (model != null) model.update();
     }
 
-    public LogMessage getMessage(int i) {
-        return messages.get(i);
+    public void setCacheBudget(CacheBudget budget) {
+        this.budget = budget;
+        budget.register("messages", this);
+        long size = 0;
+        synchronized (this) {
+            for (LogMessage message : messages) {
+                size += SizeEstimator.estimate(message);
+            }
+        }
+        budget.charge(this, size);
     }
 
-    public int getCount() {
+    // Called by the CacheBudget, which holds its own lock
+    public synchronized long evict(long bytes) {
+        long evicted = 0;
+        int count = 0;
+        while (evicted < bytes && count < messages.size()) {
+            evicted += SizeEstimator.estimate(messages.get(count++));
+        }
+        evicted(count);
+        messages.subList(0, count).clear();
+        pruneIndex();
+        evictions.add(count);
+        FlightEvents.cacheEviction("messages", count, evicted);
+        budget.release(this, evicted);
+        return evicted;
+    }
+
+    private void evicted(int count) {
+        if (journal == null) unindexed += count;
+    }
+
+    /*
+     * Without a journal evicted messages can not be shown, so their
+     * index entries are dropped once there are as many of them as
+     * there are cached messages, or a thousand.
+     */
+    private void pruneIndex() {
+        if (unindexed < Math.max(1000, messages.size())) return;
+        index.dropBefore(messages.isEmpty()
+                ? messageIndex + 1 : messages.get(0).getMessageIndex());
+        unindexed = 0;
+    }
+
+    // null when the row was evicted since the count was taken
+    public synchronized LogMessage getMessage(int i) {
+        return i < messages.size() ? messages.get(i) : null;
+    }
+
+    public synchronized int getCount() {
         return messages.size();
     }
 
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /*
+     * Looks a message up by its number, from the heap if it is still
+     * cached or from the journal otherwise.
+     */
+    public LogMessage getMessageByIndex(int index) {
+        synchronized (this) {
+            if (!messages.isEmpty()) {
+                int position = index - messages.get(0).getMessageIndex();
+                if (position >= 0 && position < messages.size()) {
+                    return messages.get(position);
+                }
+            }
+        }
+        if (journal != null) {
+            try {
+                return journal.read(index - 1,
+                        FIXimulator.getApplication().getDataDictionary());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Looks up the messages numbered indexes[from] to indexes[to - 1],
+     * which are ascending.  Cached messages come from the heap and the
+     * rest from the journal, a run of consecutive numbers in one read.
+     * Messages that are neither cached nor journaled are null.
+     */
+    public LogMessage[] getMessagesByIndex(int[] indexes, int from, int to) {
+        LogMessage[] found = new LogMessage[to - from];
+        synchronized (this) {
+            if (!messages.isEmpty()) {
+                int oldest = messages.get(0).getMessageIndex();
+                for (int i = from; i < to; i++) {
+                    int position = indexes[i] - oldest;
+                    if (position >= 0 && position < messages.size()) {
+                        found[i - from] = messages.get(position);
+                    }
+                }
+            }
+        }
+        if (journal == null) return found;
+        DataDictionary dictionary =
+                FIXimulator.getApplication().getDataDictionary();
+        int i = from;
+        while (i < to) {
+            if (found[i - from] != null) {
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < to && found[end - from] == null
+                    && indexes[end] == indexes[end - 1] + 1) {
+                end++;
+            }
+            try {
+                List<LogMessage> read = journal.read(indexes[i] - 1,
+                        indexes[end - 1], dictionary);
+                for (int j = 0; j < read.size(); j++) {
+                    found[i - from + j] = read.get(j);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            i = end;
+        }
+        return found;
+    }
+
+    public int[] search(int tag, String value) {
+        return available(index.search(tag, value));
+    }
+
+    public int[] searchOrder(String id) {
+        return available(index.searchOrder(id));
+    }
+
+    // without a journal only the cached messages can be shown
+    public synchronized int[] available(int[] found) {
+        if (journal != null) return found;
+        int oldest = messages.isEmpty()
+                ? messageIndex + 1 : messages.get(0).getMessageIndex();
+        int skip = 0;
+        while (skip < found.length && found[skip] < oldest) skip++;
+        if (skip == 0) return found;
+        return Arrays.copyOfRange(found, skip, found.length);
+    }
+
+    public MessageJournal getJournal() {
+        return journal;
+    }
+
+    public void setJournal(MessageJournal journal) {
+        this.journal = journal;
+        // continue numbering after the last message journaled today
+        messageIndex = journal.getCount();
+        int batch = 10000;
+        for (int from = 0; from < messageIndex; from += batch) {
+            try {
+                List<String> raw = journal.readRawMessages(from, from + batch);
+                for (int i = 0; i < raw.size(); i++) {
+                    if (raw.get(i) == null) continue;
+                    index.add(from + i + 1, raw.get(i),
+                            LogMessage.DEFAULT_DELIMETER);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     public void addCallback(MessageTableModel model) {
         this.model = model;
     }
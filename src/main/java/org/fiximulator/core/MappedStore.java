@@ -0,0 +1,246 @@
+/*
+ * File     : MappedStore.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : This class is a QuickFIX/J MessageStore kept in memory
+ *            mapped files.  Messages are appended to fixed size
+ *            segment files and an in-memory index maps each sequence
+ *            number to its record, so resends and refreshes read the
+ *            mapped pages directly instead of rereading the store.
+ *
+ */
+
+package org.fiximulator.core;
+
+import quickfix.MessageStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+public class MappedStore implements MessageStore {
+    private static final String CHARSET = "UTF-8";
+    private static final int MAGIC = 0x46495853;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_POSITION = 0;
+    private static final int SENDER_POSITION = 4;
+    private static final int TARGET_POSITION = 8;
+    private static final int CREATION_POSITION = 16;
+    // A record is [seq][length][message bytes]; a seq of 0 marks the
+    // end of the data and NEXT_SEGMENT continues in the next segment.
+    private static final int RECORD_HEADER = 8;
+    private static final int END = 0;
+    private static final int NEXT_SEGMENT = -1;
+
+    private final File directory;
+    private final String prefix;
+    private final int segmentSize;
+    private MappedByteBuffer header;
+    private List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+    private long[] index = new long[1024];
+    private int segment = 0;
+    private int position = 0;
+
+    public MappedStore(File directory, String prefix, int segmentSize)
+            throws IOException {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentSize = segmentSize;
+        directory.mkdirs();
+        header = map(new File(directory, prefix + ".mhdr"), HEADER_SIZE);
+        if (header.getInt(MAGIC_POSITION) != MAGIC) {
+            initializeHeader();
+        }
+        recover();
+    }
+
+    public synchronized boolean set(int sequence, String message)
+            throws IOException {
+        byte[] bytes = message.getBytes(CHARSET);
+        int needed = RECORD_HEADER + bytes.length + 4;
+        if (needed > segmentSize) {
+            throw new IOException("Message of " + bytes.length
+                    + " bytes does not fit in a store segment");
+        }
+        if (position + needed > segmentSize) {
+            MappedByteBuffer next = segment(segment + 1);
+            next.putInt(0, END);
+            segment(segment).putInt(position, NEXT_SEGMENT);
+            segment++;
+            position = 0;
+        }
+        // The sequence number is written last so that a record is
+        // never seen before it is complete.
+        ByteBuffer buffer = segment(segment).duplicate();
+        buffer.position(position + 4);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        buffer.putInt(END);
+        segment(segment).putInt(position, sequence);
+        setIndex(sequence, (long)segment * segmentSize + position);
+        position += RECORD_HEADER + bytes.length;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized void get(int startSequence, int endSequence,
+            Collection messages) throws IOException {
+        for (int sequence = startSequence; sequence <= endSequence;
+                sequence++) {
+            ByteBuffer record = getRecord(sequence);
+            if (record != null) {
+                byte[] bytes = new byte[record.remaining()];
+                record.get(bytes);
+                messages.add(new String(bytes, CHARSET));
+            }
+        }
+    }
+
+    /*
+     * The stored bytes of a range of messages as read-only views of
+     * the mapped segments, without copying them.
+     */
+    public synchronized void getSlices(int startSequence, int endSequence,
+            Collection<ByteBuffer> slices) {
+        for (int sequence = startSequence; sequence <= endSequence;
+                sequence++) {
+            ByteBuffer record = getRecord(sequence);
+            if (record != null) slices.add(record);
+        }
+    }
+
+    public synchronized int getNextSenderMsgSeqNum() {
+        return header.getInt(SENDER_POSITION);
+    }
+
+    public synchronized int getNextTargetMsgSeqNum() {
+        return header.getInt(TARGET_POSITION);
+    }
+
+    public synchronized void setNextSenderMsgSeqNum(int next) {
+        header.putInt(SENDER_POSITION, next);
+    }
+
+    public synchronized void setNextTargetMsgSeqNum(int next) {
+        header.putInt(TARGET_POSITION, next);
+    }
+
+    public synchronized void incrNextSenderMsgSeqNum() {
+        setNextSenderMsgSeqNum(getNextSenderMsgSeqNum() + 1);
+    }
+
+    public synchronized void incrNextTargetMsgSeqNum() {
+        setNextTargetMsgSeqNum(getNextTargetMsgSeqNum() + 1);
+    }
+
+    public synchronized Date getCreationTime() {
+        return new Date(header.getLong(CREATION_POSITION));
+    }
+
+    /*
+     * The segments are reused rather than deleted, since a mapped file
+     * cannot be removed on every platform while it is still mapped.
+     */
+    public synchronized void reset() throws IOException {
+        initializeHeader();
+        segment(0).putInt(0, END);
+        Arrays.fill(index, 0);
+        segment = 0;
+        position = 0;
+    }
+
+    // The mapped pages are the store, so there is nothing to reread.
+    public synchronized void refresh() throws IOException {
+        if (header.getInt(MAGIC_POSITION) != MAGIC) {
+            initializeHeader();
+        }
+    }
+
+    private void initializeHeader() {
+        header.putInt(SENDER_POSITION, 1);
+        header.putInt(TARGET_POSITION, 1);
+        header.putLong(CREATION_POSITION, System.currentTimeMillis());
+        header.putInt(MAGIC_POSITION, MAGIC);
+    }
+
+    private ByteBuffer getRecord(int sequence) {
+        if (sequence <= 0 || sequence >= index.length
+                || index[sequence] == 0) {
+            return null;
+        }
+        long offset = index[sequence] - 1;
+        ByteBuffer buffer =
+                segments.get((int)(offset / segmentSize)).duplicate();
+        int start = (int)(offset % segmentSize);
+        int length = buffer.getInt(start + 4);
+        buffer.position(start + RECORD_HEADER);
+        buffer.limit(start + RECORD_HEADER + length);
+        return buffer.slice().asReadOnlyBuffer();
+    }
+
+    private void setIndex(int sequence, long offset) {
+        if (sequence >= index.length) {
+            index = Arrays.copyOf(index,
+                    Math.max(index.length * 2, sequence + 1));
+        }
+        // 0 means no record, so offsets are kept one based
+        index[sequence] = offset + 1;
+    }
+
+    /*
+     * Walks the segments from the start to rebuild the index and find
+     * where the next record goes.
+     */
+    private void recover() throws IOException {
+        segment = 0;
+        position = 0;
+        while (true) {
+            MappedByteBuffer buffer = segment(segment);
+            int marker = buffer.getInt(position);
+            if (marker == END) break;
+            if (marker == NEXT_SEGMENT) {
+                segment++;
+                position = 0;
+                continue;
+            }
+            int length = buffer.getInt(position + 4);
+            if (marker < 0 || length < 0
+                    || position + RECORD_HEADER + length + 4 > segmentSize) {
+                // torn record, write over it
+                buffer.putInt(position, END);
+                break;
+            }
+            setIndex(marker, (long)segment * segmentSize + position);
+            position += RECORD_HEADER + length;
+        }
+    }
+
+    private MappedByteBuffer segment(int number) throws IOException {
+        while (segments.size() <= number) {
+            segments.add(map(new File(directory,
+                    prefix + ".mbody." + segments.size()), segmentSize));
+        }
+        return segments.get(number);
+    }
+
+    private static MappedByteBuffer map(File file, int size)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (raf.length() < size) raf.setLength(size);
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            // the mapping stays valid after the file is closed
+            raf.close();
+        }
+    }
+}
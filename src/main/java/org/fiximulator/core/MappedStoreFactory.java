@@ -0,0 +1,58 @@
+/*
+ * File     : MappedStoreFactory.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : This class creates a MappedStore for each session in the
+ *            FileStorePath directory.  It is used in place of the
+ *            FileStoreFactory when FIXimulatorMessageStore=mapped.
+ *
+ */
+
+package org.fiximulator.core;
+
+import quickfix.MessageStore;
+import quickfix.MessageStoreFactory;
+import quickfix.RuntimeError;
+import quickfix.SessionID;
+import quickfix.SessionSettings;
+
+import java.io.File;
+import java.io.IOException;
+
+public class MappedStoreFactory implements MessageStoreFactory {
+    private SessionSettings settings;
+
+    public MappedStoreFactory(SessionSettings settings) {
+        this.settings = settings;
+    }
+
+    public MessageStore create(SessionID sessionID) {
+        String path = "data";
+        try {
+            path = settings.getString(sessionID, "FileStorePath");
+        } catch (Exception e) {}
+        long segmentSize = 64 * 1024 * 1024;
+        try {
+            segmentSize = settings.getLong(sessionID,
+                    "FIXimulatorMappedStoreSegmentSize");
+        } catch (Exception e) {}
+        try {
+            return new MappedStore(new File(path), getPrefix(sessionID),
+                    (int)segmentSize);
+        } catch (IOException e) {
+            throw new RuntimeError(e);
+        }
+    }
+
+    private String getPrefix(SessionID sessionID) {
+        String prefix = sessionID.getBeginString() + "-"
+                + sessionID.getSenderCompID() + "-"
+                + sessionID.getTargetCompID();
+        String qualifier = sessionID.getSessionQualifier();
+        if (qualifier != null && qualifier.length() > 0) {
+            prefix += "-" + qualifier;
+        }
+        return prefix.replaceAll("[^A-Za-z0-9.\\-]", "_");
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * File     : MessageIndex.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : This class keeps inverted indexes from the values of a
+ *            few identifying tags to the numbers of the messages that
+ *            carry them.  Messages are indexed as they are captured so
+ *            the lifecycle of an order can be found without scanning.
+ *
+ */
+
+package org.fiximulator.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+public class MessageIndex {
+    public static final int CLORDID = 11;
+    public static final int ORIGCLORDID = 41;
+    public static final int ORDERID = 37;
+    public static final int EXECID = 17;
+    public static final int SYMBOL = 55;
+    public static final int MSGTYPE = 35;
+    private static final int[] INDEXED_TAGS =
+        {CLORDID, ORIGCLORDID, ORDERID, EXECID, SYMBOL, MSGTYPE};
+    private static final int[] EMPTY = new int[0];
+
+    private Map<Integer, Map<String, Postings>> indexes =
+            new HashMap<Integer, Map<String, Postings>>();
+
+    public MessageIndex() {
+        for (int tag : INDEXED_TAGS) {
+            indexes.put(tag, new HashMap<String, Postings>());
+        }
+    }
+
+    public static boolean isIndexed(int tag) {
+        for (int indexed : INDEXED_TAGS) {
+            if (indexed == tag) return true;
+        }
+        return false;
+    }
+
+    /*
+     * Walks the raw message once and records the message number under
+     * every indexed tag it carries.
+     */
+    public synchronized void add(int messageIndex, String rawMessage,
+            char delimeter) {
+        int start = 0;
+        int length = rawMessage.length();
+        while (start < length) {
+            int equals = rawMessage.indexOf('=', start);
+            if (equals == -1) break;
+            int end = rawMessage.indexOf(delimeter, equals);
+            if (end == -1) end = length;
+            int tag = parseTag(rawMessage, start, equals);
+            if (tag > 0 && isIndexed(tag)) {
+                String value = rawMessage.substring(equals + 1, end);
+                Map<String, Postings> index = indexes.get(tag);
+                Postings postings = index.get(value);
+                if (postings == null) {
+                    postings = new Postings();
+                    index.put(value, postings);
+                }
+                postings.add(messageIndex);
+            }
+            start = end + 1;
+        }
+    }
+
+    public synchronized int[] search(int tag, String value) {
+        Map<String, Postings> index = indexes.get(tag);
+        if (index == null) return EMPTY;
+        Postings postings = index.get(value);
+        if (postings == null) return EMPTY;
+        return postings.toArray();
+    }
+
+    /*
+     * All messages that reference an order by its ClOrdID, OrigClOrdID
+     * or OrderID, in the order they were captured.
+     */
+    public synchronized int[] searchOrder(String id) {
+        return merge(merge(search(CLORDID, id), search(ORIGCLORDID, id)),
+                search(ORDERID, id));
+    }
+
+    // Forgets the messages numbered below oldest
+    public synchronized void dropBefore(int oldest) {
+        for (Map<String, Postings> index : indexes.values()) {
+            Iterator<Postings> iterator = index.values().iterator();
+            while (iterator.hasNext()) {
+                Postings postings = iterator.next();
+                postings.dropBefore(oldest);
+                if (postings.size == 0) iterator.remove();
+            }
+        }
+    }
+
+    private static int parseTag(String rawMessage, int start, int end) {
+        int tag = 0;
+        for (int i = start; i < end; i++) {
+            char c = rawMessage.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            tag = tag * 10 + (c - '0');
+        }
+        return tag;
+    }
+
+    // union of two ascending lists without duplicates
+    private static int[] merge(int[] left, int[] right) {
+        int[] merged = new int[left.length + right.length];
+        int i = 0, j = 0, k = 0;
+        while (i < left.length || j < right.length) {
+            int next;
+            if (j == right.length
+                    || (i < left.length && left[i] <= right[j])) {
+                next = left[i++];
+            } else {
+                next = right[j++];
+            }
+            if (k == 0 || merged[k - 1] != next) merged[k++] = next;
+        }
+        return Arrays.copyOf(merged, k);
+    }
+
+    private static class Postings {
+        private int[] values = new int[4];
+        private int size = 0;
+
+        void add(int value) {
+            // a message carrying a tag twice is only listed once
+            if (size > 0 && values[size - 1] == value) return;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void dropBefore(int oldest) {
+            int skip = 0;
+            while (skip < size && values[skip] < oldest) skip++;
+            if (skip == 0) return;
+            System.arraycopy(values, skip, values, 0, size - skip);
+            size -= skip;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * File     : MessageJournal.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : This class is an append-only file of captured messages.
+ *            Only the file offsets are kept in memory so any message
+ *            can be read back by its number without keeping the whole
+ *            day's traffic on the heap.
+ *
+ *            Messages are handed to a writer thread, which appends
+ *            what has queued up in one write, so the session thread
+ *            never waits on the disk.  The offsets are kept by message
+ *            number, so a message that could not be written leaves a
+ *            gap that reads back as null instead of shifting every
+ *            later message.
+ *
+ */
+
+package org.fiximulator.core;
+
+import quickfix.DataDictionary;
+import quickfix.SessionID;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class MessageJournal implements Runnable {
+    private static final int HEADER_SIZE = 4;
+    private static final String CHARSET = "UTF-8";
+    private static final int BATCH_SIZE = 1000;
+    // the offset of a message that was never written
+    private static final long MISSING = -1;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    // by message number - 1, up to the last number written
+    private long[] offsets = new long[1024];
+    private int count = 0;
+    private long size = 0;
+    // unbounded, a message dropped here would be lost for good
+    private final BlockingQueue<LogMessage> queue =
+            new LinkedBlockingQueue<LogMessage>();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    public MessageJournal(File journalFile) throws IOException {
+        File directory = journalFile.getParentFile();
+        if (directory != null) directory.mkdirs();
+        file = new RandomAccessFile(journalFile, "rw");
+        channel = file.getChannel();
+        recover();
+        writerThread = new Thread(this, "FIXimulator journal");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /*
+     * The journal for the current day lives in the given directory, so
+     * a restarted simulator picks up the traffic it has already seen.
+     */
+    public static MessageJournal open(String path) throws IOException {
+        String day = new SimpleDateFormat("yyyyMMdd").format(new Date());
+        return new MessageJournal(
+                new File(path, "messages-" + day + ".jnl"));
+    }
+
+    // Queues the message, it can be read back once it is written
+    public void append(LogMessage message) {
+        queue.add(message);
+    }
+
+    public void run() {
+        List<LogMessage> batch = new ArrayList<LogMessage>(BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                LogMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                }
+            } catch (InterruptedException e) {
+                queue.drainTo(batch, BATCH_SIZE);
+            }
+            if (!batch.isEmpty()) write(batch);
+            batch.clear();
+        }
+    }
+
+    /*
+     * Writes a batch in one go.  When that fails the messages are
+     * written one at a time, so only the ones that fail are missing.
+     */
+    private void write(List<LogMessage> batch) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                    batch.size() * 256);
+            int[] sizes = new int[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                int before = bytes.size();
+                encode(batch.get(i), bytes);
+                sizes[i] = bytes.size() - before;
+            }
+            long position = size;
+            writeFully(ByteBuffer.wrap(bytes.toByteArray()), position);
+            synchronized (this) {
+                for (int i = 0; i < batch.size(); i++) {
+                    addOffset(batch.get(i).getMessageIndex(), position);
+                    position += sizes[i];
+                }
+                size = position;
+            }
+            return;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (LogMessage message : batch) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                        message.getRawMessage().length() + 64);
+                encode(message, bytes);
+                writeFully(ByteBuffer.wrap(bytes.toByteArray()), size);
+                synchronized (this) {
+                    addOffset(message.getMessageIndex(), size);
+                    size += bytes.size();
+                }
+            } catch (IOException e) {
+                System.out.println("Message " + message.getMessageIndex()
+                        + " could not be journaled: " + e.getMessage());
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void encode(LogMessage message,
+            ByteArrayOutputStream bytes) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream(
+                message.getRawMessage().length() + 64);
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeInt(message.getMessageIndex());
+        out.writeBoolean(message.isIncoming());
+        SessionID sessionID = message.getSessionId();
+        out.writeUTF(sessionID == null ? "" : sessionID.getBeginString());
+        out.writeUTF(sessionID == null ? "" : sessionID.getSenderCompID());
+        out.writeUTF(sessionID == null ? "" : sessionID.getTargetCompID());
+        byte[] raw = message.getRawMessage().getBytes(CHARSET);
+        out.writeInt(raw.length);
+        out.write(raw);
+        out.flush();
+        new DataOutputStream(bytes).writeInt(record.size());
+        record.writeTo(bytes);
+    }
+
+    // The highest message number written
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public LogMessage read(int position, DataDictionary dictionary)
+            throws IOException {
+        List<LogMessage> messages = read(position, position + 1, dictionary);
+        return messages.isEmpty() ? null : messages.get(0);
+    }
+
+    /*
+     * Reads the messages numbered from + 1 to to, with a single
+     * positional read since consecutive records are contiguous in the
+     * file.  A message that was never written is null.
+     */
+    public List<LogMessage> read(int from, int to, DataDictionary dictionary)
+            throws IOException {
+        List<byte[]> records = readRecords(from, to);
+        List<LogMessage> messages = new ArrayList<LogMessage>(records.size());
+        for (byte[] record : records) {
+            messages.add(record == null ? null : decode(record, dictionary));
+        }
+        return messages;
+    }
+
+    /*
+     * Reads only the raw text of the messages in [from, to), which does
+     * not need a data dictionary.
+     */
+    public List<String> readRawMessages(int from, int to) throws IOException {
+        List<byte[]> records = readRecords(from, to);
+        List<String> messages = new ArrayList<String>(records.size());
+        for (byte[] record : records) {
+            if (record == null) {
+                messages.add(null);
+                continue;
+            }
+            DataInputStream in =
+                    new DataInputStream(new ByteArrayInputStream(record));
+            in.readInt();
+            in.readBoolean();
+            in.readUTF();
+            in.readUTF();
+            in.readUTF();
+            byte[] raw = new byte[in.readInt()];
+            in.readFully(raw);
+            messages.add(new String(raw, CHARSET));
+        }
+        return messages;
+    }
+
+    // The records of the messages numbered from + 1 to to, by number
+    private List<byte[]> readRecords(int from, int to) throws IOException {
+        long start = MISSING;
+        long end = MISSING;
+        synchronized (this) {
+            from = Math.max(0, from);
+            to = Math.min(to, count);
+            if (from >= to) return new ArrayList<byte[]>();
+            for (int i = from; i < to && start == MISSING; i++) {
+                start = offsets[i];
+            }
+            for (int i = to; i < count && end == MISSING; i++) {
+                end = offsets[i];
+            }
+            if (end == MISSING) end = size;
+        }
+        List<byte[]> records = new ArrayList<byte[]>(to - from);
+        for (int i = from; i < to; i++) {
+            records.add(null);
+        }
+        if (start == MISSING) return records;
+        ByteBuffer buffer = ByteBuffer.allocate((int)(end - start));
+        long position = start;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) break;
+            position += read;
+        }
+        buffer.flip();
+
+        // the records say which message they are
+        while (buffer.remaining() > HEADER_SIZE) {
+            byte[] record = new byte[buffer.getInt()];
+            buffer.get(record);
+            int number = ByteBuffer.wrap(record).getInt();
+            records.set(number - 1 - from, record);
+        }
+        return records;
+    }
+
+    /*
+     * Writes what is still queued before closing the file.  The writer
+     * is not interrupted, that would close the channel under it.
+     */
+    public void close() {
+        running = false;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                channel.close();
+                file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private LogMessage decode(byte[] record, DataDictionary dictionary)
+            throws IOException {
+        DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(record));
+        int messageIndex = in.readInt();
+        boolean incoming = in.readBoolean();
+        String beginString = in.readUTF();
+        String senderCompID = in.readUTF();
+        String targetCompID = in.readUTF();
+        byte[] raw = new byte[in.readInt()];
+        in.readFully(raw);
+        SessionID sessionID = null;
+        if (beginString.length() > 0) {
+            sessionID = new SessionID(beginString, senderCompID, targetCompID);
+        }
+        return new LogMessage(messageIndex, incoming, sessionID,
+                new String(raw, CHARSET), dictionary);
+    }
+
+    /*
+     * Rebuilds the offset index from an existing journal, dropping a
+     * partially written record left behind by a crash.
+     */
+    private void recover() throws IOException {
+        long length = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        ByteBuffer number = ByteBuffer.allocate(4);
+        long position = 0;
+        while (position + HEADER_SIZE <= length) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int recordSize = header.getInt();
+            if (recordSize < 4
+                    || position + HEADER_SIZE + recordSize > length) {
+                break;
+            }
+            number.clear();
+            channel.read(number, position + HEADER_SIZE);
+            number.flip();
+            int messageIndex = number.getInt();
+            if (messageIndex <= count) break;
+            addOffset(messageIndex, position);
+            position += HEADER_SIZE + recordSize;
+        }
+        if (position < length) {
+            channel.truncate(position);
+        }
+        size = position;
+    }
+
+    // Numbers skipped since the last message written are gaps
+    private void addOffset(int messageIndex, long offset) {
+        if (messageIndex > offsets.length) {
+            offsets = Arrays.copyOf(offsets,
+                    Math.max(messageIndex, offsets.length * 2));
+        }
+        while (count < messageIndex - 1) {
+            offsets[count++] = MISSING;
+        }
+        offsets[count++] = offset;
+    }
+}
@@ -11,6 +11,7 @@
 package org.fiximulator.core;
 
 import quickfix.FieldNotFound;
+import quickfix.field.Account;
 import quickfix.field.ClOrdID;
 import quickfix.field.IDSource;
 import quickfix.field.OrdType;
@@ -23,6 +24,7 @@ import quickfix.field.Symbol;
 import quickfix.field.TimeInForce;
 
 public class Order implements Cloneable {
+    private static final String DONE_STATUSES = "23458C";
     private static int nextID = 1;
     private boolean receivedOrder = false;
     private boolean receivedCancel = false;
@@ -38,11 +40,15 @@ public class Order implements Cloneable {
     private String symbol = null;
     private String securityID = null;
     private String idSource = null;
+    private String account = null;
     private double quantity = 0.0;
     private double open = 0.0;
     private double executed = 0.0;
     private double limit = 0.0;
     private double avgPx = 0.0;
+    // System.nanoTime() stamps for the StageLatency, not persisted
+    private long receivedNanos = 0;
+    private long queuedNanos = 0;
 
     @Override
     public Order clone() {
@@ -112,6 +118,13 @@ public class Order implements Cloneable {
             this.setLimit(price.getValue());
         } catch (FieldNotFound ex) {}
 
+        // Account
+        try {
+            Account msgAccount = new Account();
+            message.get(msgAccount);
+            this.setAccount(msgAccount.getValue());
+        } catch (FieldNotFound ex) {}
+
         // SecurityID
         try {
             SecurityID secID = new SecurityID();
@@ -211,15 +224,6 @@ public class Order implements Cloneable {
             this.setOrigClientID(origClOrdID.getValue().toString());
         } catch (FieldNotFound ex) {}
 
-        Order oldOrder = FIXimulator.getApplication()
-                .getOrders().getOrder(origClientID);
-        if (oldOrder != null) {
-            open = oldOrder.getOpen();
-            executed = oldOrder.getExecuted();
-            avgPx = oldOrder.getAvgPx();
-            status = oldOrder.getFIXStatus();
-        }
-
         // Side
         try {
             Side msgSide = new Side();
@@ -263,6 +267,13 @@ public class Order implements Cloneable {
             this.setLimit(price.getValue());
         } catch (FieldNotFound ex) {}
 
+        // Account
+        try {
+            Account msgAccount = new Account();
+            message.get(msgAccount);
+            this.setAccount(msgAccount.getValue());
+        } catch (FieldNotFound ex) {}
+
         // SecurityID
         try {
             SecurityID secID = new SecurityID();
@@ -276,8 +287,25 @@ public class Order implements Cloneable {
             message.get(idSrc);
             this.setIdSource(idSrc.getValue());
         } catch (FieldNotFound ex) {}
+
+        Order oldOrder = FIXimulator.getApplication()
+                .getOrders().getOrder(origClientID);
+        if (oldOrder != null) replaces(oldOrder);
     }
 
+    /*
+     * Takes over what the original executed, the replacement works the
+     * rest of its OrderQty, or nothing when the original executed more.
+     */
+    public void replaces(Order original) {
+        executed = original.getExecuted();
+        avgPx = original.getAvgPx();
+        status = original.getFIXStatus();
+        open = Fixed.toQty(Math.max(0,
+                Fixed.qty(quantity) - Fixed.qty(executed)));
+    }
+
+
     public String generateID() {
         return "O" + Long.valueOf(
                 System.currentTimeMillis() + (nextID++)).toString();
@@ -403,6 +431,15 @@ public class Order implements Cloneable {
         return status;
     }
 
+    /*
+     * Nothing left to work.  A replacement is Replaced while it still
+     * works, the order it replaced is closed with nothing open.
+     */
+    public boolean isDone() {
+        if (status == '5') return open == 0;
+        return DONE_STATUSES.indexOf(status) >= 0;
+    }
+
     public void setStatus(char status) {
         this.status = status;
     }
@@ -442,6 +479,14 @@ public class Order implements Cloneable {
         this.idSource = idSource;
     }
 
+    public String getAccount() {
+        return account;
+    }
+
+    public void setAccount(String account) {
+        this.account = account;
+    }
+
     public String getSecurityID() {
         return securityID;
     }
@@ -512,4 +557,20 @@ public class Order implements Cloneable {
     public void setRejectedCancelReplace(boolean rejectedCancelReplace) {
         this.rejectedCancelReplace = rejectedCancelReplace;
     }
+
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    public void setReceivedNanos(long receivedNanos) {
+        this.receivedNanos = receivedNanos;
+    }
+
+    public long getQueuedNanos() {
+        return queuedNanos;
+    }
+
+    public void setQueuedNanos(long queuedNanos) {
+        this.queuedNanos = queuedNanos;
+    }
 }
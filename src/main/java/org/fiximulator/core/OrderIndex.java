@@ -0,0 +1,318 @@
+/*
+ * File     : OrderIndex.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : This class is an on-disk index of every order seen during
+ *            the day.  The latest state of each order is appended to a
+ *            record file, and a memory mapped open addressing hash
+ *            table maps both the OrderID and the ClOrdID to the record.
+ *            The OrderSet writes an order when it evicts it and falls
+ *            back on the index when an order is no longer cached, so
+ *            late cancels and replaces still find the state of the
+ *            original order.
+ *
+ */
+
+package org.fiximulator.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+public class OrderIndex {
+    private static final int MAGIC = 0x4649584f;
+    private static final int HEADER_SIZE = 64;
+    private static final int CAPACITY_POSITION = 4;
+    private static final int SIZE_POSITION = 8;
+    // A slot is [long key hash][long record offset + 1], 0 is empty
+    private static final int SLOT_SIZE = 16;
+    private static final int RECORD_HEADER = 4;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private File indexFile;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer table;
+    private int capacity;
+    private int size;
+    private long recordsSize;
+
+    public OrderIndex(File directory, String day) throws IOException {
+        directory.mkdirs();
+        indexFile = new File(directory, "orders-" + day + ".idx");
+        file = new RandomAccessFile(
+                new File(directory, "orders-" + day + ".dat"), "rw");
+        channel = file.getChannel();
+        recordsSize = channel.size();
+        if (isValid(indexFile)) {
+            table = map(indexFile, 0);
+            capacity = table.getInt(CAPACITY_POSITION);
+            size = table.getInt(SIZE_POSITION);
+        } else {
+            indexFile.delete();
+            table = map(indexFile, INITIAL_CAPACITY);
+            rebuild();
+        }
+    }
+
+    public static OrderIndex open(String path) throws IOException {
+        String day = new SimpleDateFormat("yyyyMMdd").format(new Date());
+        return new OrderIndex(new File(path), day);
+    }
+
+    /*
+     * Stores the current state of the order under its OrderID and
+     * ClOrdID.  The record is written before the slots point at it.
+     */
+    public synchronized void put(Order order) {
+        if (table == null) return;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            StateStore.writeOrder(out, order);
+            out.flush();
+            ByteBuffer buffer =
+                    ByteBuffer.allocate(RECORD_HEADER + bytes.size());
+            buffer.putInt(bytes.size());
+            buffer.put(bytes.toByteArray());
+            buffer.flip();
+            long offset = recordsSize;
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            recordsSize = position;
+            putKey(order.getID(), offset);
+            if (order.getClientID() != null) {
+                putKey(order.getClientID(), offset);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /*
+     * Returns a copy of the last recorded state of the order with the
+     * given OrderID or ClOrdID, or null if it was never seen today.
+     */
+    public synchronized Order get(String id) {
+        if (id == null || table == null) return null;
+        long hash = hash(id);
+        int mask = capacity - 1;
+        try {
+            for (int slot = (int)hash & mask; ; slot = (slot + 1) & mask) {
+                long stored = table.getLong(slotPosition(slot));
+                if (stored == 0) return null;
+                if (stored == hash) {
+                    Order order = read(table.getLong(slotPosition(slot) + 8) - 1);
+                    if (matches(order, id)) return order;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    public synchronized int getCount() {
+        return size;
+    }
+
+    public synchronized void close() {
+        try {
+            channel.close();
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (table == null) return;
+        table.force();
+        unmap(table);
+        table = null;
+    }
+
+    private void putKey(String id, long offset) throws IOException {
+        if ((size + 1) * 2 > capacity) grow();
+        long hash = hash(id);
+        int mask = capacity - 1;
+        for (int slot = (int)hash & mask; ; slot = (slot + 1) & mask) {
+            int position = slotPosition(slot);
+            long stored = table.getLong(position);
+            if (stored == 0) {
+                // offset first so a slot with a hash is always complete
+                table.putLong(position + 8, offset + 1);
+                table.putLong(position, hash);
+                table.putInt(SIZE_POSITION, ++size);
+                return;
+            }
+            if (stored == hash
+                    && matches(read(table.getLong(position + 8) - 1), id)) {
+                table.putLong(position + 8, offset + 1);
+                return;
+            }
+        }
+    }
+
+    /*
+     * Doubles the table into a new file which replaces the old one in a
+     * single rename.  The slots keep their full hash, so the records do
+     * not need to be read again.
+     */
+    private void grow() throws IOException {
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        tempFile.delete();
+        MappedByteBuffer old = table;
+        int oldCapacity = capacity;
+        table = map(tempFile, oldCapacity * 2);
+        capacity = oldCapacity * 2;
+        int mask = capacity - 1;
+        for (int i = 0; i < oldCapacity; i++) {
+            long hash = old.getLong(HEADER_SIZE + i * SLOT_SIZE);
+            if (hash == 0) continue;
+            int slot = (int)hash & mask;
+            while (table.getLong(slotPosition(slot)) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table.putLong(slotPosition(slot) + 8,
+                    old.getLong(HEADER_SIZE + i * SLOT_SIZE + 8));
+            table.putLong(slotPosition(slot), hash);
+        }
+        writeHeader();
+        Files.move(tempFile.toPath(), indexFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        unmap(old);
+    }
+
+    // Builds the table again from the record file
+    private void rebuild() throws IOException {
+        capacity = INITIAL_CAPACITY;
+        size = 0;
+        writeHeader();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        while (position + RECORD_HEADER <= recordsSize) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int length = header.getInt();
+            if (length <= 0 || position + RECORD_HEADER + length > recordsSize) {
+                break;
+            }
+            Order order = read(position);
+            putKey(order.getID(), position);
+            if (order.getClientID() != null) {
+                putKey(order.getClientID(), position);
+            }
+            position += RECORD_HEADER + length;
+        }
+        if (position < recordsSize) {
+            // a partially written record
+            channel.truncate(position);
+            recordsSize = position;
+        }
+    }
+
+    private Order read(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        channel.read(header, offset);
+        header.flip();
+        ByteBuffer record = ByteBuffer.allocate(header.getInt());
+        channel.read(record, offset + RECORD_HEADER);
+        return StateStore.readOrder(new DataInputStream(
+                new ByteArrayInputStream(record.array())));
+    }
+
+    private void writeHeader() {
+        table.putInt(CAPACITY_POSITION, capacity);
+        table.putInt(SIZE_POSITION, size);
+        table.putInt(0, MAGIC);
+    }
+
+    private static boolean isValid(File indexFile) throws IOException {
+        if (indexFile.length() < HEADER_SIZE) return false;
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+        try {
+            return raf.readInt() == MAGIC;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static boolean matches(Order order, String id) {
+        return id.equals(order.getID()) || id.equals(order.getClientID());
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    // 64-bit FNV-1a, with 0 kept for empty slots
+    private static long hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /*
+     * Releases a mapping now instead of when it is garbage collected,
+     * through Unsafe.invokeCleaner on Java 9 and later and the buffer's
+     * Cleaner on Java 8.  The buffer must not be used afterwards.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+                    ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (Exception e) {}
+        try {
+            Method cleaner = buffer.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            Object clean = cleaner.invoke(buffer);
+            if (clean != null) {
+                clean.getClass().getMethod("clean").invoke(clean);
+            }
+        } catch (Exception e) {
+            // left to the garbage collector
+        }
+    }
+
+    /*
+     * Maps the table file, sized for the given capacity, or as it is on
+     * disk when the capacity is 0.
+     */
+    private static MappedByteBuffer map(File file, int capacity)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long length = capacity == 0 ? raf.length()
+                    : HEADER_SIZE + (long)capacity * SLOT_SIZE;
+            if (raf.length() < length) raf.setLength(length);
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                    0, length);
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -4,69 +4,258 @@
  * Author   : Zoltan Feledy
  *
  * Contents : This class is a Set of Order objects with a utility
- *            methods to access the individual orders.
+ *            methods to access the individual orders.  When the cache
+ *            is full, orders that are done (filled, canceled, replaced,
+ *            rejected, done for day or expired) are evicted first, in
+ *            the order they were finished, while live orders stay.
+ *            With a CacheBudget the evictions are driven by the shared
+ *            byte budget instead of the FIXimulatorCachedObjects count.
+ *            Orders that are no longer cached are looked up in the
+ *            OrderIndex, when there is one.  An order is written to the
+ *            index when it is evicted, so the orders being worked cost
+ *            no disk writes.
  */
 
 package org.fiximulator.core;
 
 import org.fiximulator.ui.OrderTableModel;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
-public class OrderSet {
-    private ArrayList<Order> orders = new ArrayList<Order>();
-    private ArrayList<Order> ordersToFill = new ArrayList<Order>();
+public class OrderSet implements CacheBudget.Evictable {
+    private LinkedHashMap<String, Order> orders =
+            new LinkedHashMap<String, Order>();
+    private Map<String, Order> clientIDs = new HashMap<String, Order>();
+    private LinkedHashSet<Order> terminal = new LinkedHashSet<Order>();
+    private ArrayDeque<Order> ordersToFill = new ArrayDeque<Order>();
+    // Rebuilt on demand for the table model's row lookups
+    private Order[] rows = null;
     private OrderTableModel orderTableModel = null;
+    private StateStore stateStore = null;
+    private CacheBudget budget = null;
+    private int fixedLimit = 0;
+    private OrderIndex orderIndex = null;
+    private final LongAdder evictions = new LongAdder();
 
     public OrderSet() {}
 
     public void add(Order order, boolean toFill) {
-        orders.add(order);
-        if (toFill) ordersToFill.add(order);
-        int limit = 50;
-        try {
-            limit = (int)FIXimulator.getApplication().getSettings()
-                    .getLong("FIXimulatorCachedObjects");
-        } catch (Exception e) {}
-        while (orders.size() > limit) {
-            orders.remove(0);
+        synchronized (this) {
+            put(order);
+            if (toFill) ordersToFill.add(order);
+            trim();
         }
-        orderTableModel.update();
+        if (budget != null) budget.charge(this, SizeEstimator.estimate(order));
+        if (stateStore != null) stateStore.record(order);
+        if (orderTableModel != null) orderTableModel.update();
     }
 
-    public void update() {
-        orderTableModel.update();
+    public void update(Order order) {
+        boolean cached;
+        synchronized (this) {
+            cached = orders.containsKey(order.getID());
+            if (cached) {
+                track(order);
+                trim();
+            }
+        }
+        // a copy from the index, by a late bust or correction
+        if (!cached && orderIndex != null) orderIndex.put(order);
+        if (stateStore != null) stateStore.record(order);
+        if (orderTableModel != null) orderTableModel.update();
+    }
+
+    /*
+     * An order canceled or replaced by a later request has nothing left
+     * open, and can be evicted like any other done order.
+     */
+    public void close(Order order, char status) {
+        order.setStatus(status);
+        order.setOpen(0);
+        order.setReceivedOrder(false);
+        update(order);
+    }
+
+    // Orders recovered by the StateStore at startup
+    public void restore(List<Order> restored) {
+        synchronized (this) {
+            for (Order order : restored) {
+                put(order);
+            }
+            trim();
+        }
+        if (budget != null) {
+            for (Order order : restored) {
+                budget.charge(this, SizeEstimator.estimate(order));
+            }
+        }
+    }
+
+    public synchronized List<Order> getSnapshot() {
+        return new ArrayList<Order>(orders.values());
+    }
+
+    // A cache size that does not follow the setting, for the benchmarks
+    void setFixedLimit(int fixedLimit) {
+        this.fixedLimit = fixedLimit;
+    }
+
+    public void setStateStore(StateStore stateStore) {
+        this.stateStore = stateStore;
+    }
+
+    public void setOrderIndex(OrderIndex orderIndex) {
+        this.orderIndex = orderIndex;
+    }
+
+    public void setCacheBudget(CacheBudget budget) {
+        this.budget = budget;
+        budget.register("orders", this);
+        for (Order order : getSnapshot()) {
+            budget.charge(this, SizeEstimator.estimate(order));
+        }
+    }
+
+    // Called by the CacheBudget, which holds its own lock
+    public synchronized long evict(long bytes) {
+        long evicted = 0;
+        int count = 0;
+        Iterator<Order> iterator = terminal.iterator();
+        while (evicted < bytes && iterator.hasNext()) {
+            Order order = iterator.next();
+            iterator.remove();
+            remove(order);
+            long size = SizeEstimator.estimate(order);
+            budget.evicted(this, order, size);
+            evictions.increment();
+            evicted += size;
+            count++;
+        }
+        FlightEvents.cacheEviction("orders", count, evicted);
+        return evicted;
     }
 
     public void addCallback(OrderTableModel orderTableModel) {
         this.orderTableModel = orderTableModel;
     }
 
-    public int getCount() {
+    public synchronized int getCount() {
         return orders.size();
     }
 
-    public Order getOrder(int i) {
-        return orders.get(i);
+    public synchronized Order getOrder(int i) {
+        if (rows == null) {
+            rows = orders.values().toArray(new Order[orders.size()]);
+        }
+        return rows[i];
     }
 
+    /*
+     * An order found in the OrderIndex is a copy of its last recorded
+     * state and is not put back in the cache.
+     */
     public Order getOrder(String id) {
-        Iterator<Order> iterator = orders.iterator();
-        while (iterator.hasNext()) {
-            Order order = iterator.next();
-            if (order.getID().equals(id) || order.getClientID().equals(id))
-                return order;
+        Order order;
+        synchronized (this) {
+            order = orders.get(id);
+            if (order == null) order = clientIDs.get(id);
         }
-        return null;
+        if (order == null && orderIndex != null) {
+            order = orderIndex.get(id);
+        }
+        return order;
+    }
+
+    public synchronized int getFillQueueSize() {
+        return ordersToFill.size();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // Puts an order in line for the executor again, after a restart
+    public synchronized void queue(Order order) {
+        ordersToFill.add(order);
+    }
+
+    public synchronized boolean haveOrdersToFill() {
+        return !ordersToFill.isEmpty();
     }
 
-    public boolean haveOrdersToFill() {
-        if (ordersToFill.size() > 0) return true;
-        return false;
+    public synchronized Order getOrderToFill() {
+        return ordersToFill.poll();
+    }
+
+    private void put(Order order) {
+        orders.put(order.getID(), order);
+        if (order.getClientID() != null) {
+            clientIDs.put(order.getClientID(), order);
+        }
+        track(order);
+        rows = null;
     }
 
-    public Order getOrderToFill() {
-        return ordersToFill.remove(0);
+    /*
+     * An order can be evicted once it is done and nothing is waiting on
+     * it, a bust can make it live again.
+     */
+    private void track(Order order) {
+        if (isTerminal(order)) {
+            terminal.add(order);
+        } else {
+            terminal.remove(order);
+        }
+    }
+
+    private boolean isTerminal(Order order) {
+        return order.isDone()
+                && !order.isReceivedOrder()
+                && !order.isReceivedCancel()
+                && !order.isReceivedReplace();
+    }
+
+    /*
+     * Live orders are never evicted, so the cache can run over the
+     * limit while all of them are still working.
+     */
+    private void trim() {
+        if (budget != null) return;
+        int limit = fixedLimit;
+        if (limit == 0) {
+            limit = 50;
+            try {
+                limit = (int)FIXimulator.getApplication().getSettings()
+                        .getLong("FIXimulatorCachedObjects");
+            } catch (Exception e) {}
+        }
+        int count = 0;
+        Iterator<Order> iterator = terminal.iterator();
+        while (orders.size() > limit && iterator.hasNext()) {
+            Order order = iterator.next();
+            iterator.remove();
+            remove(order);
+            evictions.increment();
+            count++;
+        }
+        FlightEvents.cacheEviction("orders", count, 0);
+    }
+
+    private void remove(Order order) {
+        if (orderIndex != null) orderIndex.put(order);
+        orders.remove(order.getID());
+        if (order.getClientID() != null
+                && clientIDs.get(order.getClientID()) == order) {
+            clientIDs.remove(order.getClientID());
+        }
+        rows = null;
     }
 }
@@ -0,0 +1,111 @@
+/*
+ * File     : Pacer.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Paces outbound reports to a requested rate with
+ *            LockSupport.parkNanos instead of Thread.sleep, so delays
+ *            well under a millisecond come out right.  parkNanos
+ *            overshoots by tens of microseconds, with spin set the
+ *            last stretch of every wait is spent busy spinning on
+ *            System.nanoTime() at the cost of a core.
+ *
+ *            Every report counts towards the actual rate, measured
+ *            from the first report to the latest one, so it can be
+ *            compared with the requested rate.
+ *
+ */
+
+package org.fiximulator.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+public class Pacer {
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long CATCH_UP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private volatile long intervalNanos = 0;
+    private volatile boolean spin = false;
+    private long next = 0;
+    private long first = 0;
+    private long last = 0;
+    private long count = 0;
+
+    public Pacer() {}
+
+    // Reports per second, 0 for no limit
+    public synchronized void setRate(double perSecond) {
+        intervalNanos = perSecond <= 0 ? 0 : (long)(1e9 / perSecond);
+        next = 0;
+        reset();
+    }
+
+    public void setSpin(boolean spin) {
+        this.spin = spin;
+    }
+
+    public boolean isSpin() {
+        return spin;
+    }
+
+    /*
+     * Waits for the next slot.  A pacer that has fallen behind sends
+     * right away, but never makes up more than a millisecond or one
+     * interval, so an idle spell is not followed by a long burst.
+     */
+    public void acquire() {
+        long slot;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (count++ == 0) first = now;
+            last = now;
+            if (intervalNanos == 0) return;
+            if (next < now - Math.max(intervalNanos, CATCH_UP_NANOS)) {
+                next = now;
+            }
+            slot = next;
+            next += intervalNanos;
+        }
+        waitUntil(slot, spin);
+        synchronized (this) {
+            last = System.nanoTime();
+        }
+    }
+
+    // Waits for the given number of nanoseconds
+    public void pause(long nanos) {
+        if (nanos > 0) waitUntil(System.nanoTime() + nanos, spin);
+    }
+
+    public double getRequestedRate() {
+        long interval = intervalNanos;
+        return interval == 0 ? 0 : 1e9 / interval;
+    }
+
+    public synchronized double getActualRate() {
+        if (count < 2 || last == first) return 0;
+        return (count - 1) * 1e9 / (last - first);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized void reset() {
+        count = 0;
+        first = 0;
+        last = 0;
+    }
+
+    private static void waitUntil(long deadline, boolean spin) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (!spin) {
+                LockSupport.parkNanos(remaining);
+            } else if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            }
+        }
+    }
+}
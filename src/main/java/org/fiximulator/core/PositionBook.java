@@ -0,0 +1,217 @@
+/*
+ * File     : PositionBook.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Running per-symbol and per-side aggregates of executed
+ *            quantity, notional, VWAP, open quantity and order count.
+ *            Fills are applied as deltas and the open quantity of each
+ *            working order is remembered, so every update is O(1) and
+ *            nothing ever scans the OrderSet.  The notional moves to a
+ *            BigInteger once it no longer fits in a long at the price
+ *            scale.
+ *
+ */
+
+package org.fiximulator.core;
+
+import org.fiximulator.ui.PositionTableModel;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PositionBook {
+    private Map<String, Position> positions = new HashMap<String, Position>();
+    // the open quantity each working order last contributed
+    private Map<String, Long> working = new HashMap<String, Long>();
+    private Position[] rows = null;
+    private PositionTableModel model = null;
+
+    public PositionBook() {}
+
+    // A new order, counted once and working for its full quantity
+    public void added(Order order) {
+        synchronized (this) {
+            position(order).orders++;
+            track(order);
+        }
+        if (model != null) model.update();
+    }
+
+    // Orders restored at startup, their fills are taken at the AvgPx
+    public void restore(List<Order> restored) {
+        synchronized (this) {
+            for (Order order : restored) {
+                Position position = position(order);
+                long executed = Fixed.qty(order.getExecuted());
+                position.orders++;
+                position.executed += executed;
+                position.addNotional(executed, Fixed.price(order.getAvgPx()));
+                track(order);
+            }
+        }
+        if (model != null) model.update();
+    }
+
+    // Picks up a change in the open quantity of an order
+    public void update(Order order) {
+        synchronized (this) {
+            track(order);
+        }
+        if (model != null) model.update();
+    }
+
+    /*
+     * Applies a fill, a negative quantity takes one back out for a bust
+     * or the old half of a correction.
+     */
+    public void fill(Order order, long qty, long price) {
+        synchronized (this) {
+            Position position = position(order);
+            position.executed += qty;
+            position.addNotional(qty, price);
+            track(order);
+        }
+        if (model != null) model.update();
+    }
+
+    // An order replaced or canceled by a later request stops working
+    public void closed(Order order) {
+        synchronized (this) {
+            Long open = working.remove(order.getID());
+            if (open != null) position(order).open -= open;
+        }
+        if (model != null) model.update();
+    }
+
+    public synchronized List<Position> getPositions() {
+        List<Position> copies = new ArrayList<Position>(positions.size());
+        for (Position position : positions.values()) {
+            copies.add(position.copy());
+        }
+        Collections.sort(copies, new Comparator<Position>() {
+            public int compare(Position a, Position b) {
+                int bySymbol = a.symbol.compareTo(b.symbol);
+                return bySymbol != 0 ? bySymbol : a.side.compareTo(b.side);
+            }
+        });
+        return copies;
+    }
+
+    public synchronized int getCount() {
+        return positions.size();
+    }
+
+    public synchronized Position getPosition(int row) {
+        if (rows == null) rows = getPositions().toArray(new Position[0]);
+        return row < rows.length ? rows[row] : null;
+    }
+
+    public void addCallback(PositionTableModel model) {
+        this.model = model;
+    }
+
+    private void track(Order order) {
+        long open = order.isDone() ? 0 : Fixed.qty(order.getOpen());
+        Long previous = open == 0
+                ? working.remove(order.getID())
+                : working.put(order.getID(), open);
+        position(order).open += open - (previous == null ? 0 : previous);
+        rows = null;
+    }
+
+    private Position position(Order order) {
+        String symbol = order.getSymbol() == null ? "" : order.getSymbol();
+        String key = symbol + '\u0001' + order.getFIXSide();
+        Position position = positions.get(key);
+        if (position == null) {
+            position = new Position(symbol, order.getSide());
+            positions.put(key, position);
+        }
+        return position;
+    }
+
+    public static class Position {
+        private final String symbol;
+        private final String side;
+        private long executed = 0;
+        private long notional = 0;
+        // set instead of notional once that would overflow
+        private BigInteger bigNotional = null;
+        private long open = 0;
+        private int orders = 0;
+
+        Position(String symbol, String side) {
+            this.symbol = symbol;
+            this.side = side;
+        }
+
+        private Position copy() {
+            Position copy = new Position(symbol, side);
+            copy.executed = executed;
+            copy.notional = notional;
+            copy.bigNotional = bigNotional;
+            copy.open = open;
+            copy.orders = orders;
+            return copy;
+        }
+
+        // a single fill can be past the long range as well as the sum
+        private void addNotional(long qty, long price) {
+            if (bigNotional == null) {
+                try {
+                    notional = Math.addExact(notional, Fixed.mulDiv(
+                            Math.multiplyExact(qty, price), 1,
+                            Fixed.QTY_SCALE));
+                    return;
+                } catch (ArithmeticException e) {
+                    bigNotional = BigInteger.valueOf(notional);
+                }
+            }
+            bigNotional = bigNotional.add(Fixed.mulDiv(
+                    BigInteger.valueOf(qty), price, Fixed.QTY_SCALE));
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public String getSide() {
+            return side;
+        }
+
+        public double getExecuted() {
+            return Fixed.toQty(executed);
+        }
+
+        public double getNotional() {
+            if (bigNotional != null) {
+                return bigNotional.doubleValue() / Fixed.PRICE_SCALE;
+            }
+            return Fixed.toPrice(notional);
+        }
+
+        public double getVWAP() {
+            if (executed == 0) return 0;
+            if (bigNotional != null) {
+                return Fixed.toPrice(Fixed.mulDiv(bigNotional,
+                        Fixed.QTY_SCALE, executed).longValue());
+            }
+            return Fixed.toPrice(
+                    Fixed.mulDiv(notional, Fixed.QTY_SCALE, executed));
+        }
+
+        public double getOpen() {
+            return Fixed.toQty(open);
+        }
+
+        public int getOrders() {
+            return orders;
+        }
+    }
+}
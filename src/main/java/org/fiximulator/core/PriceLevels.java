@@ -0,0 +1,117 @@
+/*
+ * File     : PriceLevels.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : One side of a price-time priority book.  Orders are
+ *            queued in arrival order at their limit, a Fixed price,
+ *            and the levels are kept in a TreeMap with the best price
+ *            first.  Market orders queue ahead of every level.
+ *
+ */
+
+package org.fiximulator.core;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+class PriceLevels {
+    private final ArrayDeque<Resting> market = new ArrayDeque<Resting>();
+    private final TreeMap<Long, ArrayDeque<Resting>> levels;
+    private int size = 0;
+
+    PriceLevels(boolean buy) {
+        levels = buy
+                ? new TreeMap<Long, ArrayDeque<Resting>>(
+                        Collections.<Long>reverseOrder())
+                : new TreeMap<Long, ArrayDeque<Resting>>();
+    }
+
+    // a price of 0 queues a market order
+    void add(Order order, long price, long remaining) {
+        ArrayDeque<Resting> queue = market;
+        if (price != 0) {
+            queue = levels.get(price);
+            if (queue == null) {
+                queue = new ArrayDeque<Resting>();
+                levels.put(price, queue);
+            }
+        }
+        queue.add(new Resting(order, remaining));
+        size++;
+    }
+
+    // The order at the front of the book, null when it is empty
+    Resting best() {
+        if (!market.isEmpty()) return market.peek();
+        if (levels.isEmpty()) return null;
+        return levels.firstEntry().getValue().peek();
+    }
+
+    // The price of best(), 0 for a market order
+    long bestPrice() {
+        if (!market.isEmpty() || levels.isEmpty()) return 0;
+        return levels.firstKey();
+    }
+
+    void removeBest() {
+        if (!market.isEmpty()) {
+            market.poll();
+        } else {
+            ArrayDeque<Resting> queue = levels.firstEntry().getValue();
+            queue.poll();
+            if (queue.isEmpty()) levels.pollFirstEntry();
+        }
+        size--;
+    }
+
+    boolean remove(Order order, long price) {
+        ArrayDeque<Resting> queue = price == 0 ? market : levels.get(price);
+        if (queue == null) return false;
+        for (Resting resting : queue) {
+            if (resting.order == order) {
+                queue.remove(resting);
+                if (queue.isEmpty() && price != 0) levels.remove(price);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * The quantity resting at prices up to the limit, 0 for any price,
+     * counting no further than wanted.
+     */
+    long available(long limit, long wanted) {
+        long available = 0;
+        Map<Long, ArrayDeque<Resting>> reachable =
+                limit == 0 ? levels : levels.headMap(limit, true);
+        for (Resting resting : market) {
+            available += resting.remaining;
+        }
+        for (ArrayDeque<Resting> queue : reachable.values()) {
+            if (available >= wanted) break;
+            for (Resting resting : queue) {
+                available += resting.remaining;
+            }
+        }
+        return available;
+    }
+
+    int size() {
+        return size;
+    }
+
+    static class Resting {
+        final Order order;
+        long remaining;
+
+        Resting(Order order, long remaining) {
+            this.order = order;
+            this.remaining = remaining;
+        }
+    }
+}
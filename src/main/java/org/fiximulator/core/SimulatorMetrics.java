@@ -0,0 +1,211 @@
+/*
+ * File     : SimulatorMetrics.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Live counters and gauges for the simulator, exposed over
+ *            JMX.  The counters are LongAdders so the session threads
+ *            and the executor can bump them without contending, the
+ *            gauges are read from the caches when JMX asks for them.
+ *
+ */
+
+package org.fiximulator.core;
+
+import quickfix.FieldNotFound;
+import quickfix.Message;
+import quickfix.SessionID;
+import quickfix.field.MsgType;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+public class SimulatorMetrics implements SimulatorMetricsMXBean {
+    public static final String OBJECT_NAME =
+            "org.fiximulator:type=SimulatorMetrics";
+
+    private final FIXimulatorApplication application;
+    private final ConcurrentMap<String, LongAdder> messagesIn =
+            new ConcurrentHashMap<String, LongAdder>();
+    private final ConcurrentMap<String, LongAdder> messagesOut =
+            new ConcurrentHashMap<String, LongAdder>();
+    private final ConcurrentMap<String, String> sessionStates =
+            new ConcurrentHashMap<String, String>();
+    private final LongAdder executionsSent = new LongAdder();
+    private final LongAdder quoteLookups = new LongAdder();
+    private final LongAdder quoteLookupNanos = new LongAdder();
+    private final LongAccumulator quoteLookupMax =
+            new LongAccumulator(Math::max, 0);
+
+    public SimulatorMetrics(FIXimulatorApplication application) {
+        this.application = application;
+    }
+
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    this, new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void messageIn(Message message) {
+        count(messagesIn, message);
+    }
+
+    public void messageOut(Message message) {
+        count(messagesOut, message);
+    }
+
+    public void executionSent() {
+        executionsSent.increment();
+    }
+
+    public void quoteLookup(long nanos) {
+        quoteLookups.increment();
+        quoteLookupNanos.add(nanos);
+        quoteLookupMax.accumulate(nanos);
+    }
+
+    public void sessionState(SessionID sessionID, String state) {
+        sessionStates.put(sessionID.toString(), state);
+    }
+
+    private void count(ConcurrentMap<String, LongAdder> counters,
+            Message message) {
+        String msgType = "?";
+        try {
+            msgType = message.getHeader().getString(MsgType.FIELD);
+        } catch (FieldNotFound e) {}
+        LongAdder counter = counters.get(msgType);
+        if (counter == null) {
+            counter = new LongAdder();
+            LongAdder existing = counters.putIfAbsent(msgType, counter);
+            if (existing != null) counter = existing;
+        }
+        counter.increment();
+    }
+
+    public Map<String, Long> getMessagesIn() {
+        return sum(messagesIn);
+    }
+
+    public Map<String, Long> getMessagesOut() {
+        return sum(messagesOut);
+    }
+
+    public long getExecutionsSent() {
+        return executionsSent.sum();
+    }
+
+    public Map<String, Long> getOrdersByStatus() {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (Order order : application.getOrders().getSnapshot()) {
+            Long count = counts.get(order.getStatus());
+            counts.put(order.getStatus(), count == null ? 1 : count + 1);
+        }
+        return counts;
+    }
+
+    public int getExecutorQueueDepth() {
+        return application.getOrders().getFillQueueSize();
+    }
+
+    public int getScheduledOrders() {
+        return application.getScheduledOrders();
+    }
+
+    public double getFillRateRequested() {
+        return application.getPacer().getRequestedRate();
+    }
+
+    public double getFillRateActual() {
+        return application.getPacer().getActualRate();
+    }
+
+    public long getThrottleRejects() {
+        VenueEmulator venue = application.getVenue();
+        return venue == null ? 0 : venue.getThrottleRejects();
+    }
+
+    public long getThrottleDelays() {
+        VenueEmulator venue = application.getVenue();
+        return venue == null ? 0 : venue.getThrottleDelays();
+    }
+
+    public int getVenuePending() {
+        VenueEmulator venue = application.getVenue();
+        return venue == null ? 0 : venue.getPending();
+    }
+
+    public long getQuoteLookups() {
+        return quoteLookups.sum();
+    }
+
+    public double getQuoteLookupMeanMicros() {
+        long lookups = quoteLookups.sum();
+        if (lookups == 0) return 0;
+        return quoteLookupNanos.sum() / lookups / 1000.0;
+    }
+
+    public double getQuoteLookupMaxMicros() {
+        return quoteLookupMax.get() / 1000.0;
+    }
+
+    public Map<String, Long> getCacheSizes() {
+        Map<String, Long> sizes = new TreeMap<String, Long>();
+        sizes.put("orders", (long)application.getOrders().getCount());
+        sizes.put("executions", (long)application.getExecutions().getCount());
+        LogMessageSet messages = FIXimulator.getMessageSet();
+        if (messages != null) sizes.put("messages", (long)messages.getCount());
+        return sizes;
+    }
+
+    public Map<String, Long> getCacheEvictions() {
+        Map<String, Long> evictions = new TreeMap<String, Long>();
+        evictions.put("orders", application.getOrders().getEvictions());
+        evictions.put("executions",
+                application.getExecutions().getEvictions());
+        LogMessageSet messages = FIXimulator.getMessageSet();
+        if (messages != null) evictions.put("messages", messages.getEvictions());
+        return evictions;
+    }
+
+    public Map<String, String> getSessionStates() {
+        return new TreeMap<String, String>(sessionStates);
+    }
+
+    // microseconds from fromApp to the report going out, by stage
+    public Map<String, String> getStageLatencies() {
+        return application.getStageLatency().getSummary();
+    }
+
+    public void resetCounters() {
+        application.getStageLatency().reset();
+        messagesIn.clear();
+        messagesOut.clear();
+        executionsSent.reset();
+        quoteLookups.reset();
+        quoteLookupNanos.reset();
+        quoteLookupMax.reset();
+        if (application.getVenue() != null) {
+            application.getVenue().resetCounters();
+        }
+    }
+
+    private static Map<String, Long> sum(Map<String, LongAdder> counters) {
+        Map<String, Long> sums = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            sums.put(entry.getKey(), entry.getValue().sum());
+        }
+        return sums;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * File     : SimulatorMetricsMXBean.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : The management interface for the live simulator metrics,
+ *            registered as org.fiximulator:type=SimulatorMetrics.
+ *
+ */
+
+package org.fiximulator.core;
+
+import java.util.Map;
+
+public interface SimulatorMetricsMXBean {
+    Map<String, Long> getMessagesIn();
+
+    Map<String, Long> getMessagesOut();
+
+    long getExecutionsSent();
+
+    Map<String, Long> getOrdersByStatus();
+
+    int getExecutorQueueDepth();
+
+    int getScheduledOrders();
+
+    double getFillRateRequested();
+
+    double getFillRateActual();
+
+    long getThrottleRejects();
+
+    long getThrottleDelays();
+
+    int getVenuePending();
+
+    long getQuoteLookups();
+
+    double getQuoteLookupMeanMicros();
+
+    double getQuoteLookupMaxMicros();
+
+    Map<String, Long> getCacheSizes();
+
+    Map<String, Long> getCacheEvictions();
+
+    Map<String, String> getSessionStates();
+
+    Map<String, String> getStageLatencies();
+
+    void resetCounters();
+}
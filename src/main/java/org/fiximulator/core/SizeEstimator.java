@@ -0,0 +1,74 @@
+/*
+ * File     : SizeEstimator.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : This class gives an approximate heap size for the cached
+ *            objects, assuming a 64-bit JVM with compressed references
+ *            and strings backed by a char array.  Objects that are
+ *            shared, such as the DataDictionary and SessionID of a
+ *            message, are not counted.
+ *
+ */
+
+package org.fiximulator.core;
+
+public class SizeEstimator {
+    private static final int HEADER = 12;
+    private static final int REFERENCE = 4;
+    private static final int ARRAY_HEADER = 16;
+    private static final int STRING = align(HEADER + REFERENCE + 4);
+    private static final int DATE = align(HEADER + REFERENCE + 8);
+    // Map entries and list slots that hold the object in its set
+    private static final int ORDER_ENTRIES = 3 * align(HEADER + 4 * REFERENCE + 4);
+    private static final int LIST_SLOT = REFERENCE;
+
+    private static final int ORDER = align(HEADER
+            + 7 * REFERENCE     // ID, clientID, origClientID, symbol...
+            + 4 * 2             // side, type, tif, status
+            + 5 * 8             // quantity, open, executed, limit, avgPx
+            + 4);               // received/rejected flags
+    private static final int EXECUTION = align(HEADER
+            + 3 * REFERENCE     // order, ID, refID
+            + 2 * 2             // execType, execTranType
+            + 5 * 8             // lastShares, lastPx, leaves, cum, avgPx
+            + 1);               // DKd
+    private static final int MESSAGE = align(HEADER
+            + 5 * REFERENCE     // sessionId, raw, type name, time, dictionary
+            + 2 + 4);           // incoming, isValid, messageIndex
+
+    private SizeEstimator() {}
+
+    public static long estimate(Order order) {
+        return ORDER + ORDER_ENTRIES
+                + estimate(order.getID())
+                + estimate(order.getClientID())
+                + estimate(order.getOrigClientID())
+                + estimate(order.getSymbol())
+                + estimate(order.getSecurityID())
+                + estimate(order.getIdSource())
+                + estimate(order.getAccount());
+    }
+
+    // The order is not included, it is accounted for by the OrderSet
+    public static long estimate(Execution execution) {
+        return EXECUTION + LIST_SLOT
+                + estimate(execution.getID())
+                + estimate(execution.getRefID());
+    }
+
+    public static long estimate(LogMessage message) {
+        return MESSAGE + LIST_SLOT + DATE
+                + estimate(message.getRawMessage())
+                + estimate(message.getMessageTypeName());
+    }
+
+    public static long estimate(String value) {
+        if (value == null) return 0;
+        return STRING + align(ARRAY_HEADER + 2 * value.length());
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * File     : StageLatency.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Histograms of the time an order spends in each stage on
+ *            its way from fromApp to the ack or fill going out.  The
+ *            stages record into HdrHistogram recorders in nanoseconds,
+ *            which are folded into running totals when they are read.
+ *
+ */
+
+package org.fiximulator.core;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class StageLatency {
+    public static final int DECODE = 0;
+    public static final int QUEUE_WAIT = 1;
+    public static final int QUOTE_FETCH = 2;
+    public static final int REPORT_BUILD = 3;
+    public static final int SEND = 4;
+    public static final int STAGES = 5;
+    private static final String[] NAMES =
+        { "Decode", "Queue wait", "Quote fetch", "Report build", "Send" };
+    private static final long HIGHEST = TimeUnit.MINUTES.toNanos(1);
+
+    private final Recorder[] recorders = new Recorder[NAMES.length];
+    private final Histogram[] totals = new Histogram[NAMES.length];
+
+    public StageLatency() {
+        for (int i = 0; i < NAMES.length; i++) {
+            recorders[i] = new Recorder(HIGHEST, 3);
+            totals[i] = new Histogram(HIGHEST, 3);
+        }
+    }
+
+    // start is a System.nanoTime() taken when the stage began
+    public void record(int stage, long start) {
+        long nanos = System.nanoTime() - start;
+        recorders[stage].recordValue(Math.max(0, Math.min(nanos, HIGHEST)));
+    }
+
+    public synchronized Histogram getHistogram(int stage) {
+        totals[stage].add(recorders[stage].getIntervalHistogram());
+        return totals[stage].copy();
+    }
+
+    public static String getName(int stage) {
+        return NAMES[stage];
+    }
+
+    // One line per stage, in microseconds
+    public Map<String, String> getSummary() {
+        Map<String, String> summary = new LinkedHashMap<String, String>();
+        for (int i = 0; i < NAMES.length; i++) {
+            Histogram histogram = getHistogram(i);
+            summary.put(NAMES[i], String.format(
+                    "count=%d p50=%.1f p99=%.1f p99.9=%.1f max=%.1f",
+                    histogram.getTotalCount(),
+                    histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getMaxValue() / 1000.0));
+        }
+        return summary;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < NAMES.length; i++) {
+            recorders[i].getIntervalHistogram();
+            totals[i].reset();
+        }
+    }
+
+    public void dump(PrintStream out) {
+        for (int i = 0; i < NAMES.length; i++) {
+            Histogram histogram = getHistogram(i);
+            if (histogram.getTotalCount() == 0) continue;
+            out.println();
+            out.println(NAMES[i] + " latency (microseconds)");
+            histogram.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+}
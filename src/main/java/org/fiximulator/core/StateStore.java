@@ -0,0 +1,495 @@
+/*
+ * File     : StateStore.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : This class keeps the order and execution state on disk so
+ *            a restarted simulator can pick up where it left off.  Every
+ *            change to an order or execution is appended to an event
+ *            log.  Every so often the log is set aside and a background
+ *            thread folds it into the snapshot, so the snapshot holds
+ *            the whole day, not just what is cached.  At startup the
+ *            snapshot is loaded and the logs are replayed on top.  The
+ *            first start of a day carries over the GTC orders that were
+ *            still working at the end of the last day with state.
+ *
+ */
+
+package org.fiximulator.core;
+
+import quickfix.field.TimeInForce;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StateStore {
+    private static final int MAGIC = 0x46495853;
+    private static final int HEADER_SIZE = 4;
+    private static final byte ORDER = 1;
+    private static final byte EXECUTION = 2;
+    // version 1 orders start with the ID, which is never null, so their
+    // first byte is 1; version 2 adds the account
+    private static final byte ORDER_VERSION = 2;
+    private static final String DONE_STATUSES = "23458C";
+
+    private File directory;
+    private String day;
+    private File snapshotFile;
+    private File logFile;
+    // the log being folded into the snapshot
+    private File foldFile;
+    private boolean folding = false;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private long size = 0;
+    private int snapshotInterval;
+    private int events = 0;
+    private OrderSet orders;
+    private ExecutionSet executions;
+
+    public StateStore(File directory, String day, int snapshotInterval)
+            throws IOException {
+        directory.mkdirs();
+        this.directory = directory;
+        this.day = day;
+        this.snapshotInterval = snapshotInterval;
+        snapshotFile = new File(directory, "state-" + day + ".snap");
+        logFile = new File(directory, "state-" + day + ".log");
+        foldFile = new File(directory, "state-" + day + ".log.fold");
+        file = new RandomAccessFile(logFile, "rw");
+        channel = file.getChannel();
+    }
+
+    /*
+     * The state for the current day lives in the given directory, only
+     * GTC orders are carried over from an earlier day.
+     */
+    public static StateStore open(String path, int snapshotInterval)
+            throws IOException {
+        String day = new SimpleDateFormat("yyyyMMdd").format(new Date());
+        return new StateStore(new File(path), day, snapshotInterval);
+    }
+
+    /*
+     * Loads the snapshot and replays the log into the given sets, then
+     * starts recording their changes.
+     */
+    public synchronized void restore(OrderSet orders, ExecutionSet executions)
+            throws IOException {
+        Map<String, Order> orderMap = new LinkedHashMap<String, Order>();
+        Map<String, Execution> executionMap =
+                new LinkedHashMap<String, Execution>();
+        boolean firstStart = !snapshotFile.exists() && !foldFile.exists()
+                && channel.size() == 0;
+        load(orderMap, executionMap);
+        if (firstStart) carryOver(orderMap);
+        orders.restore(new ArrayList<Order>(orderMap.values()));
+        executions.restore(new ArrayList<Execution>(executionMap.values()));
+        this.orders = orders;
+        this.executions = executions;
+        orders.setStateStore(this);
+        executions.setStateStore(this);
+        // the carried over orders are part of today's state from now on
+        if (firstStart) {
+            for (Order order : orderMap.values()) {
+                record(order);
+            }
+        }
+    }
+
+    private void load(Map<String, Order> orderMap,
+            Map<String, Execution> executionMap) throws IOException {
+        loadSnapshot(orderMap, executionMap);
+        // a fold that did not finish before a crash or shutdown
+        if (foldFile.exists()) {
+            RandomAccessFile fold = new RandomAccessFile(foldFile, "r");
+            try {
+                replay(fold.getChannel(), orderMap, executionMap);
+            } finally {
+                fold.close();
+            }
+        }
+        size = replay(channel, orderMap, executionMap);
+    }
+
+    private void loadSnapshot(Map<String, Order> orderMap,
+            Map<String, Execution> executionMap) throws IOException {
+        if (snapshotFile.exists()) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                    Files.readAllBytes(snapshotFile.toPath())));
+            if (in.readInt() == MAGIC) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    Order order = readOrder(in);
+                    orderMap.put(order.getID(), order);
+                }
+                count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    Execution execution = readExecution(in, orderMap);
+                    executionMap.put(execution.getID(), execution);
+                }
+            }
+        }
+    }
+
+    /*
+     * Takes the GTC orders with quantity left from the latest earlier
+     * day, without their executions, which stay with that day.
+     */
+    private void carryOver(Map<String, Order> orderMap) throws IOException {
+        String previous = null;
+        String[] names = directory.list();
+        if (names == null) return;
+        for (String name : names) {
+            if (!name.startsWith("state-")) continue;
+            int dot = name.indexOf('.');
+            if (dot < 0) continue;
+            String other = name.substring("state-".length(), dot);
+            if (other.compareTo(day) < 0
+                    && (previous == null || other.compareTo(previous) > 0)) {
+                previous = other;
+            }
+        }
+        if (previous == null) return;
+        StateStore store = new StateStore(directory, previous, snapshotInterval);
+        Map<String, Order> previousOrders = new LinkedHashMap<String, Order>();
+        try {
+            store.load(previousOrders, new LinkedHashMap<String, Execution>());
+        } finally {
+            store.close();
+        }
+        for (Order order : previousOrders.values()) {
+            if (order.getFIXTif() == TimeInForce.GOOD_TILL_CANCEL
+                    && DONE_STATUSES.indexOf(order.getFIXStatus()) < 0
+                    && order.getOpen() > 0) {
+                orderMap.put(order.getID(), order);
+            }
+        }
+    }
+
+    public void record(Order order) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(ORDER);
+            writeOrder(out, order);
+            append(bytes);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void record(Execution execution) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(EXECUTION);
+            writeOrder(out, execution.getOrder());
+            writeExecution(out, execution);
+            append(bytes);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /*
+     * Sets the log aside and starts a new one, then folds the old log
+     * into the snapshot on a background thread.  The new snapshot
+     * replaces the old one in a single rename and only then is the old
+     * log deleted; a crash in between replays the old log over the new
+     * snapshot, which comes to the same state.
+     */
+    public synchronized void snapshot() {
+        if (orders == null || folding) return;
+        events = 0;
+        // a log left by a fold that failed is folded first
+        if (!foldFile.exists()) {
+            try {
+                channel.close();
+                file.close();
+                Files.move(logFile.toPath(), foldFile.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            try {
+                file = new RandomAccessFile(logFile, "rw");
+                channel = file.getChannel();
+                size = channel.size();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (!foldFile.exists()) return;
+        }
+        folding = true;
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                fold();
+            }
+        }, "FIXimulator snapshot");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void fold() {
+        Map<String, Order> orderMap = new LinkedHashMap<String, Order>();
+        Map<String, Execution> executionMap =
+                new LinkedHashMap<String, Execution>();
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        try {
+            loadSnapshot(orderMap, executionMap);
+            RandomAccessFile fold = new RandomAccessFile(foldFile, "r");
+            try {
+                replay(fold.getChannel(), orderMap, executionMap);
+            } finally {
+                fold.close();
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                    (orderMap.size() + executionMap.size()) * 128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(orderMap.size());
+            for (Order order : orderMap.values()) {
+                writeOrder(out, order);
+            }
+            out.writeInt(executionMap.size());
+            for (Execution execution : executionMap.values()) {
+                writeExecution(out, execution);
+            }
+            out.flush();
+            RandomAccessFile temp = new RandomAccessFile(tempFile, "rw");
+            try {
+                temp.setLength(0);
+                temp.write(bytes.toByteArray());
+                temp.getChannel().force(true);
+            } finally {
+                temp.close();
+            }
+            Files.move(tempFile.toPath(), snapshotFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(foldFile.toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            synchronized (this) {
+                folding = false;
+                notifyAll();
+            }
+        }
+    }
+
+    public synchronized void close() {
+        try {
+            while (folding) wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void append(ByteArrayOutputStream bytes) throws IOException {
+        boolean snapshot;
+        synchronized (this) {
+            ByteBuffer buffer =
+                    ByteBuffer.allocate(HEADER_SIZE + bytes.size());
+            buffer.putInt(bytes.size());
+            buffer.put(bytes.toByteArray());
+            buffer.flip();
+            long position = size;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            size = position;
+            snapshot = ++events >= snapshotInterval;
+        }
+        if (snapshot) snapshot();
+    }
+
+    /*
+     * Applies the logged changes in order, dropping a partially written
+     * record left behind by a crash.
+     */
+    private long replay(FileChannel channel, Map<String, Order> orderMap,
+            Map<String, Execution> executionMap) throws IOException {
+        long length = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = 0;
+        while (position + HEADER_SIZE <= length) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int recordSize = header.getInt();
+            if (recordSize <= 0
+                    || position + HEADER_SIZE + recordSize > length) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(recordSize);
+            channel.read(record, position + HEADER_SIZE);
+            DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(record.array()));
+            try {
+                byte type = in.readByte();
+                Order order = readOrder(in);
+                Order current = orderMap.get(order.getID());
+                if (current != null) {
+                    copy(order, current);
+                } else {
+                    orderMap.put(order.getID(), order);
+                }
+                if (type == EXECUTION) {
+                    Execution execution = readExecution(in, orderMap);
+                    executionMap.put(execution.getID(), execution);
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            position += HEADER_SIZE + recordSize;
+        }
+        if (position < length && channel == this.channel) {
+            channel.truncate(position);
+        }
+        return position;
+    }
+
+    // Executions keep pointing at the same order object after a replay
+    private void copy(Order from, Order to) {
+        to.setClientID(from.getClientID());
+        to.setOrigClientID(from.getOrigClientID());
+        to.setSymbol(from.getSymbol());
+        to.setSecurityID(from.getSecurityID());
+        to.setIdSource(from.getIdSource());
+        to.setAccount(from.getAccount());
+        to.setSide(from.getFIXSide());
+        to.setType(from.getFIXType());
+        to.setTif(from.getFIXTif());
+        to.setStatus(from.getFIXStatus());
+        to.setQuantity(from.getQuantity());
+        to.setOpen(from.getOpen());
+        to.setExecuted(from.getExecuted());
+        to.setLimit(from.getLimit());
+        to.setAvgPx(from.getAvgPx());
+        to.setReceivedOrder(from.isReceivedOrder());
+        to.setReceivedCancel(from.isReceivedCancel());
+        to.setReceivedReplace(from.isReceivedReplace());
+        to.setRejectedCancelReplace(from.isRejectedCancelReplace());
+    }
+
+    static void writeOrder(DataOutputStream out, Order order)
+            throws IOException {
+        out.writeByte(ORDER_VERSION);
+        writeString(out, order.getID());
+        writeString(out, order.getClientID());
+        writeString(out, order.getOrigClientID());
+        writeString(out, order.getSymbol());
+        writeString(out, order.getSecurityID());
+        writeString(out, order.getIdSource());
+        out.writeChar(order.getFIXSide());
+        out.writeChar(order.getFIXType());
+        out.writeChar(order.getFIXTif());
+        out.writeChar(order.getFIXStatus());
+        out.writeDouble(order.getQuantity());
+        out.writeDouble(order.getOpen());
+        out.writeDouble(order.getExecuted());
+        out.writeDouble(order.getLimit());
+        out.writeDouble(order.getAvgPx());
+        out.writeBoolean(order.isReceivedOrder());
+        out.writeBoolean(order.isReceivedCancel());
+        out.writeBoolean(order.isReceivedReplace());
+        out.writeBoolean(order.isRejectedCancelReplace());
+        writeString(out, order.getAccount());
+    }
+
+    static Order readOrder(DataInputStream in) throws IOException {
+        Order order = new Order();
+        byte version = in.readByte();
+        order.setID(version == 1 ? in.readUTF() : readString(in));
+        order.setClientID(readString(in));
+        order.setOrigClientID(readString(in));
+        order.setSymbol(readString(in));
+        order.setSecurityID(readString(in));
+        order.setIdSource(readString(in));
+        order.setSide(in.readChar());
+        order.setType(in.readChar());
+        order.setTif(in.readChar());
+        order.setStatus(in.readChar());
+        order.setQuantity(in.readDouble());
+        order.setOpen(in.readDouble());
+        order.setExecuted(in.readDouble());
+        order.setLimit(in.readDouble());
+        order.setAvgPx(in.readDouble());
+        order.setReceivedOrder(in.readBoolean());
+        order.setReceivedCancel(in.readBoolean());
+        order.setReceivedReplace(in.readBoolean());
+        order.setRejectedCancelReplace(in.readBoolean());
+        if (version >= 2) order.setAccount(readString(in));
+        return order;
+    }
+
+    private static void writeExecution(DataOutputStream out,
+            Execution execution) throws IOException {
+        writeString(out, execution.getID());
+        writeString(out, execution.getRefID());
+        Order order = execution.getOrder();
+        writeString(out, order == null ? null : order.getID());
+        out.writeBoolean(execution.isDKd());
+        out.writeChar(execution.getFIXExecType());
+        out.writeChar(execution.getFIXExecTranType());
+        out.writeDouble(execution.getLastShares());
+        out.writeDouble(execution.getLastPx());
+        out.writeDouble(execution.getLeavesQty());
+        out.writeDouble(execution.getCumQty());
+        out.writeDouble(execution.getAvgPx());
+    }
+
+    private static Execution readExecution(DataInputStream in,
+            Map<String, Order> orderMap) throws IOException {
+        String id = readString(in);
+        String refID = readString(in);
+        String orderID = readString(in);
+        Execution execution = new Execution(
+                orderID == null ? null : orderMap.get(orderID));
+        execution.setID(id);
+        execution.setRefID(refID);
+        execution.setDKd(in.readBoolean());
+        execution.setExecType(in.readChar());
+        execution.setExecTranType(in.readChar());
+        execution.setLastShares(in.readDouble());
+        execution.setLastPx(in.readDouble());
+        execution.setLeavesQty(in.readDouble());
+        execution.setCumQty(in.readDouble());
+        execution.setAvgPx(in.readDouble());
+        return execution;
+    }
+
+    static void writeString(DataOutputStream out, String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * File     : TimerWheel.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : A hashed timer wheel.  Tasks are put in one of a fixed
+ *            number of buckets by their deadline, a single worker thread
+ *            moves one bucket per tick and runs the tasks that are due,
+ *            so scheduling costs the same however many tasks are
+ *            pending.  Tasks run late by up to one tick, never early.
+ *
+ *            Tasks run on the worker thread, one at a time.  Tasks due
+ *            in the same tick run in the order they were scheduled, so
+ *            tasks scheduled with non-decreasing deadlines run in order.
+ *
+ */
+
+package org.fiximulator.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class TimerWheel {
+    private final long tickNanos;
+    private final int mask;
+    private final List<Timeout>[] buckets;
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<Timeout>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread worker;
+    private final long start;
+    private volatile boolean stopped = false;
+    private long tick = 0;
+
+    // The wheel size is rounded up to a power of two
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickNanos, int size, String name) {
+        this.tickNanos = Math.max(1, tickNanos);
+        int wheelSize = 1;
+        while (wheelSize < size) wheelSize <<= 1;
+        mask = wheelSize - 1;
+        buckets = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayList<Timeout>();
+        }
+        start = System.nanoTime();
+        worker = new Thread(new Runnable() {
+            public void run() {
+                work();
+            }
+        }, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Runs the task on the worker thread once System.nanoTime() passes deadline
+    public void schedule(Runnable task, long deadline) {
+        pending.incrementAndGet();
+        added.add(new Timeout(task, deadline));
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    // Tasks still pending are dropped
+    public void stop() {
+        stopped = true;
+        LockSupport.unpark(worker);
+    }
+
+    private void work() {
+        while (!stopped) {
+            long end = start + (tick + 1) * tickNanos;
+            long remaining;
+            while ((remaining = end - System.nanoTime()) > 0 && !stopped) {
+                LockSupport.parkNanos(remaining);
+            }
+            transfer();
+            expire(buckets[(int)(tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transfer() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            long due = Math.max(tick, (timeout.deadline - start) / tickNanos);
+            timeout.rounds = (due - tick) / buckets.length;
+            buckets[(int)(due & mask)].add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> bucket) {
+        int kept = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            Timeout timeout = bucket.get(i);
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                bucket.set(kept++, timeout);
+                continue;
+            }
+            pending.decrementAndGet();
+            try {
+                timeout.task.run();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+        bucket.subList(kept, bucket.size()).clear();
+    }
+
+    private static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+}
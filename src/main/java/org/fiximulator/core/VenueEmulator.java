@@ -0,0 +1,185 @@
+/*
+ * File     : VenueEmulator.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Sits between fromApp and the message handlers and makes
+ *            the simulator answer like a venue, late and with a limit
+ *            on how fast a session may send.
+ *
+ *            Every application message is held for a latency drawn from
+ *            FIXimulatorLatency.<MsgType>, or else FIXimulatorLatency
+ *            (see LatencyModel), and handed to the handlers from a
+ *            TimerWheel, so the session thread never waits.  Messages
+ *            of a session are handled in the order they arrived.
+ *
+ *            Each session has a token bucket filling at
+ *            FIXimulatorThrottleRate messages per second and holding
+ *            FIXimulatorThrottleBurst.  With FIXimulatorThrottleAction
+ *            reject a message above the rate is rejected, with delay it
+ *            waits for a token, unless that takes longer than
+ *            FIXimulatorThrottleMaxDelay ms.
+ *
+ */
+
+package org.fiximulator.core;
+
+import quickfix.FieldNotFound;
+import quickfix.Message;
+import quickfix.SessionID;
+import quickfix.SessionSettings;
+import quickfix.field.MsgType;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class VenueEmulator {
+    private final FIXimulatorApplication application;
+    private final SessionSettings settings;
+    private final TimerWheel wheel;
+    private final LatencyModel defaultLatency;
+    private final Map<String, LatencyModel> latencies =
+            new HashMap<String, LatencyModel>();
+    private final Map<SessionID, Bucket> buckets =
+            new HashMap<SessionID, Bucket>();
+    // nanoseconds per token and the burst on top of the first one
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final boolean delay;
+    private final long maxDelayNanos;
+    private final LongAdder throttleRejects = new LongAdder();
+    private final LongAdder throttleDelays = new LongAdder();
+
+    public VenueEmulator(FIXimulatorApplication application,
+            SessionSettings settings) {
+        this.application = application;
+        this.settings = settings;
+        LatencyModel latency = latency("FIXimulatorLatency");
+        defaultLatency = latency != null
+                ? latency : new LatencyModel.Constant(0);
+        double rate = 0;
+        try {
+            rate = settings.getDouble("FIXimulatorThrottleRate");
+        } catch (Exception e) {}
+        long burst = 1;
+        try {
+            burst = settings.getLong("FIXimulatorThrottleBurst");
+        } catch (Exception e) {}
+        String action = "reject";
+        try {
+            action = settings.getString("FIXimulatorThrottleAction").trim();
+        } catch (Exception e) {}
+        long maxDelay = 1000;
+        try {
+            maxDelay = settings.getLong("FIXimulatorThrottleMaxDelay");
+        } catch (Exception e) {}
+        long tick = 100;
+        try {
+            tick = settings.getLong("FIXimulatorLatencyTick");
+        } catch (Exception e) {}
+        intervalNanos = rate <= 0 ? 0 : (long)(1e9 / rate);
+        burstNanos = Math.max(0, burst - 1) * intervalNanos;
+        delay = action.equalsIgnoreCase("delay");
+        maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelay);
+        wheel = new TimerWheel(TimeUnit.MICROSECONDS.toNanos(tick), 512,
+                "FIXimulator venue");
+    }
+
+    /*
+     * Called by fromApp with the time the message came in.  The message
+     * is either rejected right away or handed to the application once
+     * its latency has passed.  The reject is sent outside the lock, so
+     * other sessions are not held up while it goes out.
+     */
+    public void received(Message message, SessionID sessionID,
+            long received) {
+        String msgType = "?";
+        try {
+            msgType = message.getHeader().getString(MsgType.FIELD);
+        } catch (FieldNotFound e) {}
+        if (!schedule(message, sessionID, msgType, received)) {
+            throttleRejects.increment();
+            application.rejectThrottled(message, sessionID);
+        }
+    }
+
+    // Returns false when the message is over the rate and to be rejected
+    private synchronized boolean schedule(final Message message,
+            final SessionID sessionID, String msgType, long received) {
+        Bucket bucket = buckets.get(sessionID);
+        if (bucket == null) {
+            bucket = new Bucket();
+            buckets.put(sessionID, bucket);
+        }
+        long release = received;
+        if (intervalNanos > 0) {
+            // the theoretical arrival time of a message at the limit
+            long tat = Math.max(bucket.tat, received);
+            long wait = tat - burstNanos - received;
+            if (wait > 0 && (!delay || wait > maxDelayNanos)) {
+                return false;
+            }
+            if (wait > 0) {
+                throttleDelays.increment();
+                release += wait;
+            }
+            bucket.tat = tat + intervalNanos;
+        }
+        release += TimeUnit.MICROSECONDS.toNanos(getLatency(msgType).sample());
+        // a message is never handled before the one ahead of it
+        release = Math.max(release, bucket.lastRelease);
+        bucket.lastRelease = release;
+        wheel.schedule(new Runnable() {
+            public void run() {
+                application.release(message, sessionID);
+            }
+        }, release);
+        return true;
+    }
+
+    public long getThrottleRejects() {
+        return throttleRejects.sum();
+    }
+
+    public long getThrottleDelays() {
+        return throttleDelays.sum();
+    }
+
+    public int getPending() {
+        return wheel.getPending();
+    }
+
+    public void resetCounters() {
+        throttleRejects.reset();
+        throttleDelays.reset();
+    }
+
+    private LatencyModel getLatency(String msgType) {
+        if (!latencies.containsKey(msgType)) {
+            latencies.put(msgType, latency("FIXimulatorLatency." + msgType));
+        }
+        LatencyModel model = latencies.get(msgType);
+        return model != null ? model : defaultLatency;
+    }
+
+    private LatencyModel latency(String key) {
+        String spec = null;
+        try {
+            spec = settings.getString(key);
+        } catch (Exception e) {}
+        if (spec == null || spec.trim().equals("")) return null;
+        try {
+            return LatencyModel.parse(spec);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private static class Bucket {
+        private long tat = Long.MIN_VALUE;
+        private long lastRelease = Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,484 @@
+/*
+ * File     : LoadGenerator.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : This is a FIX initiator that puts load on a simulator
+ *            running on the same machine.  It sends NewOrderSingle,
+ *            cancel and replace requests at a fixed rate over a mix of
+ *            symbols, matches the ExecutionReports back to the orders
+ *            and records the ack and fill latencies in HDR histograms.
+ *            Every full fill completes a round trip, the reports show
+ *            the round trips per second for the interval and the run.
+ *
+ *            Latencies are measured from the time a request was due to
+ *            be sent rather than when it went out, so a stalled sender
+ *            does not hide the delay from the histograms.  The ack is
+ *            timed from the request it answers, the fill from the
+ *            NewOrderSingle of the order.
+ *
+ */
+
+package org.fiximulator.loadgen;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import quickfix.Application;
+import quickfix.DoNotSend;
+import quickfix.FieldNotFound;
+import quickfix.IncorrectDataFormat;
+import quickfix.IncorrectTagValue;
+import quickfix.MemoryStoreFactory;
+import quickfix.Message;
+import quickfix.MessageCracker;
+import quickfix.RejectLogon;
+import quickfix.ScreenLogFactory;
+import quickfix.Session;
+import quickfix.SessionID;
+import quickfix.SessionSettings;
+import quickfix.SocketInitiator;
+import quickfix.UnsupportedMessageType;
+import quickfix.DefaultMessageFactory;
+import quickfix.field.ClOrdID;
+import quickfix.field.ExecType;
+import quickfix.field.HandlInst;
+import quickfix.field.OrdType;
+import quickfix.field.OrderQty;
+import quickfix.field.OrigClOrdID;
+import quickfix.field.Price;
+import quickfix.field.Side;
+import quickfix.field.Symbol;
+import quickfix.field.TransactTime;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class LoadGenerator extends MessageCracker implements Application {
+    private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toMicros(10);
+
+    private SessionSettings settings;
+    private volatile SessionID sessionID = null;
+    private int rate = 100;
+    private long duration = 60;
+    private long drainTime = 5;
+    private long reportInterval = 10;
+    private double cancelRatio = 0.1;
+    private double replaceRatio = 0.1;
+    private double quantity = 100;
+    private String[] symbols;
+    private int[] weights;
+    private int totalWeight = 0;
+
+    private Random random = new Random();
+    private long nextID = 1;
+    private Map<String, Request> requests =
+            new ConcurrentHashMap<String, Request>();
+    private List<LiveOrder> live = new ArrayList<LiveOrder>();
+
+    private Recorder ackRecorder = new Recorder(HIGHEST_LATENCY, 3);
+    private Recorder fillRecorder = new Recorder(HIGHEST_LATENCY, 3);
+    private Histogram ackTotal = new Histogram(HIGHEST_LATENCY, 3);
+    private Histogram fillTotal = new Histogram(HIGHEST_LATENCY, 3);
+    private AtomicLong sent = new AtomicLong();
+    private AtomicLong acks = new AtomicLong();
+    private AtomicLong fills = new AtomicLong();
+    private long started = 0;
+    private long lastReport = 0;
+    private long lastFills = 0;
+    private volatile long lastFill = 0;
+    private AtomicLong rejects = new AtomicLong();
+
+    public LoadGenerator(SessionSettings settings) {
+        this.settings = settings;
+        try {
+            rate = (int)settings.getLong("LoadGeneratorRate");
+        } catch (Exception e) {}
+        try {
+            duration = settings.getLong("LoadGeneratorDuration");
+        } catch (Exception e) {}
+        try {
+            drainTime = settings.getLong("LoadGeneratorDrainTime");
+        } catch (Exception e) {}
+        try {
+            reportInterval = settings.getLong("LoadGeneratorReportInterval");
+        } catch (Exception e) {}
+        try {
+            cancelRatio = settings.getDouble("LoadGeneratorCancelRatio");
+        } catch (Exception e) {}
+        try {
+            replaceRatio = settings.getDouble("LoadGeneratorReplaceRatio");
+        } catch (Exception e) {}
+        try {
+            quantity = settings.getDouble("LoadGeneratorOrderQty");
+        } catch (Exception e) {}
+        String mix = "IBM:1";
+        try {
+            mix = settings.getString("LoadGeneratorSymbols");
+        } catch (Exception e) {}
+        setSymbolMix(mix);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String config = args.length > 0 ? args[0] : "config/LoadGenerator.cfg";
+        InputStream inputStream = new FileInputStream(config);
+        SessionSettings settings = new SessionSettings(inputStream);
+        inputStream.close();
+        checkLocalhost(settings);
+
+        LoadGenerator generator = new LoadGenerator(settings);
+        SocketInitiator initiator = new SocketInitiator(generator,
+                new MemoryStoreFactory(), settings,
+                new ScreenLogFactory(settings), new DefaultMessageFactory());
+        initiator.start();
+        generator.run();
+        initiator.stop();
+        System.exit(0);
+    }
+
+    /*
+     * Waits for the logon, sends for the configured duration, then
+     * gives the outstanding orders time to come back before reporting.
+     */
+    public void run() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (sessionID == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        if (sessionID == null) {
+            System.out.println("Could not log on to the simulator.");
+            return;
+        }
+        ScheduledExecutorService reporter =
+                Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                report();
+            }
+        }, reportInterval, reportInterval, TimeUnit.SECONDS);
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        synchronized (this) {
+            started = start;
+            lastReport = start;
+        }
+        long end = start + TimeUnit.SECONDS.toNanos(duration);
+        for (long due = start; due < end; due += interval) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            if (sessionID != null) sendNext(due);
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(drainTime));
+        reporter.shutdown();
+        report();
+        System.out.println();
+        System.out.println("Ack latency (microseconds)");
+        ackTotal.outputPercentileDistribution(System.out, 1.0);
+        System.out.println();
+        System.out.println("Fill latency (microseconds)");
+        fillTotal.outputPercentileDistribution(System.out, 1.0);
+        System.out.println();
+        System.out.println(String.format("Round trips per second: %.0f",
+                perSecond(fills.get(), lastFill - started)));
+    }
+
+    private void sendNext(long due) {
+        double action = random.nextDouble();
+        LiveOrder order = null;
+        if (action < cancelRatio + replaceRatio) order = pickLiveOrder();
+        if (order == null) {
+            sendNewOrder(due);
+        } else if (action < cancelRatio) {
+            sendCancel(order, due);
+        } else {
+            sendReplace(order, due);
+        }
+    }
+
+    private void sendNewOrder(long due) {
+        LiveOrder order = new LiveOrder();
+        order.clOrdID = nextClOrdID();
+        order.symbol = pickSymbol();
+        order.side = random.nextBoolean() ? Side.BUY : Side.SELL;
+        order.quantity = quantity;
+        order.price = Math.round((90 + random.nextDouble() * 20) * 100) / 100.0;
+        order.newDue = due;
+        order.clOrdIDs.add(order.clOrdID);
+
+        quickfix.fix42.NewOrderSingle message =
+                new quickfix.fix42.NewOrderSingle(
+                    new ClOrdID(order.clOrdID),
+                    new HandlInst(HandlInst.AUTOMATED_EXECUTION_ORDER_PRIVATE_NO_BROKER_INTERVENTION),
+                    new Symbol(order.symbol),
+                    new Side(order.side),
+                    new TransactTime(new Date()),
+                    new OrdType(OrdType.LIMIT));
+        message.set(new OrderQty(order.quantity));
+        message.set(new Price(order.price));
+        synchronized (live) {
+            live.add(order);
+        }
+        send(message, new Request(order, due, order.clOrdID));
+    }
+
+    private void sendCancel(LiveOrder order, long due) {
+        String clOrdID = nextClOrdID();
+        quickfix.fix42.OrderCancelRequest message =
+                new quickfix.fix42.OrderCancelRequest(
+                    new OrigClOrdID(order.clOrdID),
+                    new ClOrdID(clOrdID),
+                    new Symbol(order.symbol),
+                    new Side(order.side),
+                    new TransactTime(new Date()));
+        message.set(new OrderQty(order.quantity));
+        send(message, new Request(order, due, clOrdID));
+    }
+
+    private void sendReplace(LiveOrder order, long due) {
+        String clOrdID = nextClOrdID();
+        quickfix.fix42.OrderCancelReplaceRequest message =
+                new quickfix.fix42.OrderCancelReplaceRequest(
+                    new OrigClOrdID(order.clOrdID),
+                    new ClOrdID(clOrdID),
+                    new HandlInst(HandlInst.AUTOMATED_EXECUTION_ORDER_PRIVATE_NO_BROKER_INTERVENTION),
+                    new Symbol(order.symbol),
+                    new Side(order.side),
+                    new TransactTime(new Date()),
+                    new OrdType(OrdType.LIMIT));
+        message.set(new OrderQty(order.quantity));
+        message.set(new Price(order.price + 0.01));
+        send(message, new Request(order, due, clOrdID));
+    }
+
+    private void send(Message message, Request request) {
+        synchronized (request.order) {
+            if (!request.clOrdID.equals(request.order.clOrdID)) {
+                request.order.clOrdIDs.add(request.clOrdID);
+                request.order.pending = true;
+            }
+        }
+        requests.put(request.clOrdID, request);
+        try {
+            Session.sendToTarget(message, sessionID);
+            sent.incrementAndGet();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void onMessage(quickfix.fix42.ExecutionReport message,
+            SessionID sessionID)
+        throws FieldNotFound, UnsupportedMessageType, IncorrectTagValue {
+        long now = System.nanoTime();
+        ClOrdID clOrdID = new ClOrdID();
+        message.get(clOrdID);
+        Request request = requests.get(clOrdID.getValue());
+        if (request == null) return;
+        ExecType execType = new ExecType();
+        message.get(execType);
+        char type = execType.getValue();
+
+        if (!request.acked && type != ExecType.PARTIAL_FILL
+                && type != ExecType.FILL) {
+            request.acked = true;
+            ackRecorder.recordValue(micros(now - request.due));
+            acks.incrementAndGet();
+        }
+        LiveOrder order = request.order;
+        if (type == ExecType.FILL) {
+            // from when the New was due, across any replaces
+            fillRecorder.recordValue(micros(now - order.newDue));
+            fills.incrementAndGet();
+            lastFill = now;
+            done(order);
+        } else if (type == ExecType.CANCELED || type == ExecType.REJECTED) {
+            if (type == ExecType.REJECTED) rejects.incrementAndGet();
+            done(order);
+        } else if (type == ExecType.REPLACE) {
+            synchronized (order) {
+                order.clOrdID = request.clOrdID;
+                order.price += 0.01;
+                order.pending = false;
+            }
+        }
+    }
+
+    public void onMessage(quickfix.fix42.OrderCancelReject message,
+            SessionID sessionID)
+        throws FieldNotFound, UnsupportedMessageType, IncorrectTagValue {
+        long now = System.nanoTime();
+        ClOrdID clOrdID = new ClOrdID();
+        message.get(clOrdID);
+        Request request = requests.remove(clOrdID.getValue());
+        if (request == null) return;
+        if (!request.acked) {
+            request.acked = true;
+            ackRecorder.recordValue(micros(now - request.due));
+            acks.incrementAndGet();
+        }
+        rejects.incrementAndGet();
+        synchronized (request.order) {
+            request.order.pending = false;
+        }
+    }
+
+    public void onCreate(SessionID sessionID) {}
+
+    public void onLogon(SessionID sessionID) {
+        this.sessionID = sessionID;
+    }
+
+    public void onLogout(SessionID sessionID) {
+        this.sessionID = null;
+    }
+
+    public void toAdmin(Message message, SessionID sessionID) {}
+
+    public void toApp(Message message, SessionID sessionID)
+        throws DoNotSend {}
+
+    public void fromAdmin(Message message, SessionID sessionID)
+        throws FieldNotFound, IncorrectDataFormat,
+            IncorrectTagValue, RejectLogon {}
+
+    public void fromApp(Message message, SessionID sessionID)
+        throws FieldNotFound, IncorrectDataFormat,
+            IncorrectTagValue, UnsupportedMessageType {
+        crack(message, sessionID);
+    }
+
+    private void done(LiveOrder order) {
+        synchronized (live) {
+            live.remove(order);
+        }
+        synchronized (order) {
+            for (String clOrdID : order.clOrdIDs) {
+                requests.remove(clOrdID);
+            }
+        }
+    }
+
+    private LiveOrder pickLiveOrder() {
+        synchronized (live) {
+            if (live.isEmpty()) return null;
+            LiveOrder order = live.get(random.nextInt(live.size()));
+            return order.pending ? null : order;
+        }
+    }
+
+    private String pickSymbol() {
+        int pick = random.nextInt(totalWeight);
+        for (int i = 0; i < symbols.length; i++) {
+            pick -= weights[i];
+            if (pick < 0) return symbols[i];
+        }
+        return symbols[0];
+    }
+
+    private String nextClOrdID() {
+        return "LG" + System.currentTimeMillis() + "-" + (nextID++);
+    }
+
+    // A mix such as "IBM:5,MSFT:3,AAPL" where a missing weight is 1
+    private void setSymbolMix(String mix) {
+        String[] entries = mix.split(",");
+        symbols = new String[entries.length];
+        weights = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            String[] entry = entries[i].trim().split(":");
+            symbols[i] = entry[0];
+            weights[i] = entry.length > 1 ? Integer.parseInt(entry[1]) : 1;
+            totalWeight += weights[i];
+        }
+    }
+
+    private synchronized void report() {
+        Histogram ackInterval = ackRecorder.getIntervalHistogram();
+        Histogram fillInterval = fillRecorder.getIntervalHistogram();
+        ackTotal.add(ackInterval);
+        fillTotal.add(fillInterval);
+        long now = System.nanoTime();
+        long filled = fills.get();
+        double roundTrips = perSecond(filled - lastFills, now - lastReport);
+        lastReport = now;
+        lastFills = filled;
+        System.out.println(String.format(
+                "sent=%d acks=%d fills=%d rejects=%d open=%d rt/s=%.0f"
+                + " | ack us from request due p50=%d p99=%d p99.9=%d max=%d"
+                + " | fill us from New due p50=%d p99=%d p99.9=%d max=%d",
+                sent.get(), acks.get(), filled, rejects.get(),
+                live.size(), roundTrips,
+                ackInterval.getValueAtPercentile(50),
+                ackInterval.getValueAtPercentile(99),
+                ackInterval.getValueAtPercentile(99.9),
+                ackInterval.getMaxValue(),
+                fillInterval.getValueAtPercentile(50),
+                fillInterval.getValueAtPercentile(99),
+                fillInterval.getValueAtPercentile(99.9),
+                fillInterval.getMaxValue()));
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return nanos <= 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    private static long micros(long nanos) {
+        return Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_LATENCY);
+    }
+
+    /*
+     * The generator is only meant to be pointed at a local simulator,
+     * every session has to connect to a loopback address.
+     */
+    private static void checkLocalhost(SessionSettings settings)
+            throws Exception {
+        Iterator<?> sections = settings.sectionIterator();
+        while (sections.hasNext()) {
+            SessionID section = (SessionID)sections.next();
+            String host = settings.getString(section, "SocketConnectHost");
+            if (!InetAddress.getByName(host).isLoopbackAddress()) {
+                throw new IllegalArgumentException("SocketConnectHost "
+                        + host + " is not a local address");
+            }
+        }
+    }
+
+    private static class LiveOrder {
+        private String clOrdID;
+        private String symbol;
+        private char side;
+        private double quantity;
+        private double price;
+        // when the NewOrderSingle was due to be sent
+        private long newDue;
+        private boolean pending = false;
+        private List<String> clOrdIDs = new ArrayList<String>();
+    }
+
+    private static class Request {
+        private final LiveOrder order;
+        private final long due;
+        private final String clOrdID;
+        private volatile boolean acked = false;
+
+        Request(LiveOrder order, long due, String clOrdID) {
+            this.order = order;
+            this.due = due;
+            this.clOrdID = clOrdID;
+        }
+    }
+}
@@ -52,6 +52,7 @@ public class ExecutionTableModel extends AbstractTableModel {
 
     public Object getValueAt(int row, int column) {
         Execution execution = executions.getExecution(row);
+        if (execution == null) return null;
         Order order = execution.getOrder();
         if (column == 0) return execution.getID();
         if (column == 1) return order.getClientID();
@@ -16,8 +16,11 @@ import com.sofi.quotes.QuoteEndpoint;
 import com.sofi.quotes.QuoteService;
 import com.sofi.quotes.Timeout;
 
+import org.fiximulator.core.CacheBudget;
+import org.fiximulator.core.ControlServer;
 import org.fiximulator.core.Execution;
 import org.fiximulator.core.FIXimulator;
+import org.fiximulator.core.MessageIndex;
 import org.fiximulator.core.Order;
 import org.jdesktop.beansbinding.AutoBinding.UpdateStrategy;
 import org.jdesktop.beansbinding.BeanProperty;
@@ -29,9 +32,11 @@ import org.jdesktop.beansbinding.ELProperty;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
 import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.Arrays;
 import java.util.Properties;
 
 import javax.swing.BorderFactory;
@@ -54,9 +59,11 @@ import javax.swing.JSeparator;
 import javax.swing.JSlider;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
+import javax.swing.JTextField;
 import javax.swing.LayoutStyle;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingConstants;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.WindowConstants;
 import javax.swing.event.ChangeEvent;
@@ -92,9 +99,21 @@ public class FIXimulatorFrame extends JFrame {
         }
 
         final QuoteService quoteService = new QuoteService(props.getProperty(XIGNITE_SECRET), QuoteEndpoint.GLOBAL_DELAYED, Timeout.CrossRegion);
+        // Without a display the simulator is driven over FIXimulatorHttpPort
+        if (GraphicsEnvironment.isHeadless()
+                || Arrays.asList(args).contains("--headless")) {
+            new FIXimulator().start();
+            if (ControlServer.start(FIXimulator.getApplication(),
+                    quoteService) == null) {
+                System.err.println("WARNING: running headless without "
+                        + "FIXimulatorHttpPort, nothing can control the executor");
+            }
+            return;
+        }
         EventQueue.invokeLater(new Runnable() {
             public void run() {
                 new FIXimulator().start();
+                ControlServer.start(FIXimulator.getApplication(), quoteService);
                 new FIXimulatorFrame(quoteService).setVisible(true);
             }
         });
@@ -139,9 +158,14 @@ public class FIXimulatorFrame extends JFrame {
         messagePanel = new JPanel();
         messageScrollPane = new JScrollPane();
         messageTable = new JTable();
+        messageFilterField = new JComboBox();
+        messageFilterText = new JTextField();
+        messageFilterButton = new JButton();
+        messageFilterClearButton = new JButton();
         statusBarPanel = new JPanel();
         executorRunningLabel = new JLabel();
         clientConnectedLabel = new JLabel();
+        cacheUsageLabel = new JLabel();
         messageDetailPanel = new JPanel();
         messageDetailScrollPane = new JScrollPane();
         messageDetailTable = new JTable();
@@ -176,6 +200,19 @@ public class FIXimulatorFrame extends JFrame {
         executionCorrectButton = new JButton();
         executionScrollPane = new JScrollPane();
         executionTable = new JTable();
+        positionPanel = new JPanel();
+        positionScrollPane = new JScrollPane();
+        positionTable = new JTable();
+        reportPanel = new JPanel();
+        reportCombo = new JComboBox();
+        reportQueryText = new JTextField();
+        reportRunButton = new JButton();
+        reportCancelButton = new JButton();
+        reportPreviousButton = new JButton();
+        reportNextButton = new JButton();
+        reportStatusLabel = new JLabel();
+        reportScrollPane = new JScrollPane();
+        reportTable = new JTable();
         settingsPanel = new JPanel();
         autoResponsePanel = new JPanel();
         autoAcknowledge = new JCheckBox();
@@ -333,8 +370,13 @@ public class FIXimulatorFrame extends JFrame {
 
         messagePanel.setBorder(BorderFactory.createTitledBorder("Application Messages"));
 
-        messageTable.setAutoCreateRowSorter(true);
-        messageTable.setModel(new org.fiximulator.ui.MessageTableModel());
+        if (FIXimulator.getMessageSet().getJournal() != null) {
+            // sorting would page in every journaled message
+            messageTable.setModel(new org.fiximulator.ui.JournalMessageTableModel());
+        } else {
+            messageTable.setAutoCreateRowSorter(true);
+            messageTable.setModel(new org.fiximulator.ui.MessageTableModel());
+        }
         messageTable.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
         //Set initial column widths
         for (int i = 0; i < messageTable.getColumnCount(); i++) {
@@ -360,16 +402,58 @@ public class FIXimulatorFrame extends JFrame {
             }
         }
         messageScrollPane.setViewportView(messageTable);
+        messageScrollPane.getViewport().addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent evt) {
+                messageViewportChanged(evt);
+            }
+        });
+
+        messageFilterField.setModel(new DefaultComboBoxModel(new String[] { "Order", "ClOrdID", "OrderID", "ExecID", "Symbol", "MsgType" }));
+
+        messageFilterText.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                messageFilterButtonActionPerformed(evt);
+            }
+        });
+
+        messageFilterButton.setText("Filter");
+        messageFilterButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                messageFilterButtonActionPerformed(evt);
+            }
+        });
+
+        messageFilterClearButton.setText("Clear");
+        messageFilterClearButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                messageFilterClearButtonActionPerformed(evt);
+            }
+        });
 
         GroupLayout messagePanelLayout = new GroupLayout(messagePanel);
         messagePanel.setLayout(messagePanelLayout);
         messagePanelLayout.setHorizontalGroup(
             messagePanelLayout.createParallelGroup(GroupLayout.Alignment.LEADING)
+            .addGroup(messagePanelLayout.createSequentialGroup()
+                .addComponent(messageFilterField, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(messageFilterText, GroupLayout.PREFERRED_SIZE, 200, GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(messageFilterButton)
+                .addPreferredGap(LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(messageFilterClearButton))
             .addComponent(messageScrollPane, GroupLayout.Alignment.TRAILING, GroupLayout.DEFAULT_SIZE, 769, Short.MAX_VALUE)
         );
         messagePanelLayout.setVerticalGroup(
             messagePanelLayout.createParallelGroup(GroupLayout.Alignment.LEADING)
-            .addComponent(messageScrollPane, GroupLayout.DEFAULT_SIZE, 166, Short.MAX_VALUE)
+            .addGroup(messagePanelLayout.createSequentialGroup()
+                .addGroup(messagePanelLayout.createParallelGroup(GroupLayout.Alignment.BASELINE)
+                    .addComponent(messageFilterField, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE)
+                    .addComponent(messageFilterText, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE)
+                    .addComponent(messageFilterButton)
+                    .addComponent(messageFilterClearButton))
+                .addPreferredGap(LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(messageScrollPane, GroupLayout.DEFAULT_SIZE, 166, Short.MAX_VALUE))
         );
 
         executorRunningLabel.setIcon(new ImageIcon(getClass().getResource("/org/fiximulator/ui/red.gif"))); // NOI18N
@@ -381,6 +465,16 @@ public class FIXimulatorFrame extends JFrame {
             clientConnectedLabel.setIcon(new ImageIcon(getClass().getResource("/org/fiximulator/ui/green.gif")));
         clientConnectedLabel.setText("Client connection status");
 
+        final CacheBudget cacheBudget = FIXimulator.getCacheBudget();
+        if (cacheBudget != null) {
+            cacheUsageLabel.setText(cacheBudget.toString());
+            new Timer(1000, new ActionListener() {
+                public void actionPerformed(ActionEvent evt) {
+                    cacheUsageLabel.setText(cacheBudget.toString());
+                }
+            }).start();
+        }
+
         GroupLayout statusBarPanelLayout = new GroupLayout(statusBarPanel);
         statusBarPanel.setLayout(statusBarPanelLayout);
         statusBarPanelLayout.setHorizontalGroup(
@@ -390,13 +484,16 @@ public class FIXimulatorFrame extends JFrame {
                 .addComponent(clientConnectedLabel)
                 .addPreferredGap(LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(executorRunningLabel)
+                .addPreferredGap(LayoutStyle.ComponentPlacement.UNRELATED)
+                .addComponent(cacheUsageLabel)
                 .addContainerGap(69, Short.MAX_VALUE))
         );
         statusBarPanelLayout.setVerticalGroup(
             statusBarPanelLayout.createParallelGroup(GroupLayout.Alignment.LEADING)
             .addGroup(statusBarPanelLayout.createParallelGroup(GroupLayout.Alignment.BASELINE)
                 .addComponent(clientConnectedLabel)
-                .addComponent(executorRunningLabel))
+                .addComponent(executorRunningLabel)
+                .addComponent(cacheUsageLabel))
         );
 
         messageDetailPanel.setBorder(BorderFactory.createTitledBorder("Message Details"));
@@ -471,7 +568,8 @@ public class FIXimulatorFrame extends JFrame {
 
         delayLabel.setText("Delay:");
 
-        executorDelay.setModel(new DefaultComboBoxModel(new String[] { "1 ms", "10 ms", "100 ms", "1 second", "5 seconds" }));
+        executorDelay.setModel(new DefaultComboBoxModel(new String[] { "10 us", "100 us", "1 ms", "10 ms", "100 ms", "1 second", "5 seconds" }));
+        executorDelay.setSelectedItem("1 ms");
         executorDelay.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent evt) {
                 executorDelayActionPerformed(evt);
@@ -852,6 +950,108 @@ public class FIXimulatorFrame extends JFrame {
 
         executionTable.setDefaultRenderer(Object.class, new ExecutionCellRenderer());
 
+        positionTable.setAutoCreateRowSorter(true);
+        positionTable.setModel(new org.fiximulator.ui.PositionTableModel());
+        positionTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        positionScrollPane.setViewportView(positionTable);
+
+        GroupLayout positionPanelLayout = new GroupLayout(positionPanel);
+        positionPanel.setLayout(positionPanelLayout);
+        positionPanelLayout.setHorizontalGroup(
+            positionPanelLayout.createParallelGroup(GroupLayout.Alignment.LEADING)
+            .addComponent(positionScrollPane, 0, 0, Short.MAX_VALUE)
+        );
+        positionPanelLayout.setVerticalGroup(
+            positionPanelLayout.createParallelGroup(GroupLayout.Alignment.LEADING)
+            .addComponent(positionScrollPane, GroupLayout.DEFAULT_SIZE, 290, Short.MAX_VALUE)
+        );
+
+        mainTabbedPane.addTab("Positions", positionPanel);
+
+        String[] reportNames = new String[QueryTableModel.REPORTS.length];
+        for (int i = 0; i < reportNames.length; i++) {
+            reportNames[i] = QueryTableModel.REPORTS[i][0];
+        }
+        reportCombo.setModel(new DefaultComboBoxModel(reportNames));
+        reportQueryText.setText(QueryTableModel.REPORTS[0][1]);
+        reportCombo.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                reportComboActionPerformed(evt);
+            }
+        });
+
+        reportRunButton.setText("Run");
+        reportRunButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                reportRunButtonActionPerformed(evt);
+            }
+        });
+
+        reportCancelButton.setText("Cancel");
+        reportCancelButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                reportCancelButtonActionPerformed(evt);
+            }
+        });
+
+        reportPreviousButton.setText("Previous");
+        reportPreviousButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                reportPreviousButtonActionPerformed(evt);
+            }
+        });
+
+        reportNextButton.setText("Next");
+        reportNextButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                reportNextButtonActionPerformed(evt);
+            }
+        });
+
+        QueryTableModel queryTableModel = new QueryTableModel();
+        queryTableModel.addStatusCallback(reportStatusLabel);
+        queryTableModel.addPageCallback(reportPreviousButton, reportNextButton);
+        reportTable.setModel(queryTableModel);
+        reportTable.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        reportScrollPane.setViewportView(reportTable);
+
+        GroupLayout reportPanelLayout = new GroupLayout(reportPanel);
+        reportPanel.setLayout(reportPanelLayout);
+        reportPanelLayout.setHorizontalGroup(
+            reportPanelLayout.createParallelGroup(GroupLayout.Alignment.LEADING)
+            .addGroup(reportPanelLayout.createSequentialGroup()
+                .addComponent(reportCombo, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(reportRunButton)
+                .addPreferredGap(LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(reportCancelButton)
+                .addPreferredGap(LayoutStyle.ComponentPlacement.UNRELATED)
+                .addComponent(reportPreviousButton)
+                .addPreferredGap(LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(reportNextButton)
+                .addPreferredGap(LayoutStyle.ComponentPlacement.UNRELATED)
+                .addComponent(reportStatusLabel))
+            .addComponent(reportQueryText, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+            .addComponent(reportScrollPane, 0, 0, Short.MAX_VALUE)
+        );
+        reportPanelLayout.setVerticalGroup(
+            reportPanelLayout.createParallelGroup(GroupLayout.Alignment.LEADING)
+            .addGroup(reportPanelLayout.createSequentialGroup()
+                .addGroup(reportPanelLayout.createParallelGroup(GroupLayout.Alignment.BASELINE)
+                    .addComponent(reportCombo, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE)
+                    .addComponent(reportRunButton)
+                    .addComponent(reportCancelButton)
+                    .addComponent(reportPreviousButton)
+                    .addComponent(reportNextButton)
+                    .addComponent(reportStatusLabel))
+                .addPreferredGap(LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(reportQueryText, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(reportScrollPane, GroupLayout.DEFAULT_SIZE, 230, Short.MAX_VALUE))
+        );
+
+        mainTabbedPane.addTab("Reports", reportPanel);
+
         autoResponsePanel.setBorder(BorderFactory.createTitledBorder("Automated Responses"));
 
         autoAcknowledge.setText("Acknowledge orders on receipt");
@@ -1238,15 +1438,7 @@ private void okButtonActionPerformed(ActionEvent evt) { // GEN - FIRST:event_okB
 } // GEN - LAST:event_okButtonActionPerformed
 
 private void startExecutorButtonActionPerformed(ActionEvent evt) { // GEN - FIRST:event_startExecutorButtonActionPerformed
-    int delay = 1;
-    if (this.executorDelay.getSelectedItem().toString().equals("10 ms"))
-        delay = 10;
-    if (this.executorDelay.getSelectedItem().toString().equals("100 ms"))
-        delay = 100;
-    if (this.executorDelay.getSelectedItem().toString().equals("1 second"))
-        delay = 1000;
-    if (this.executorDelay.getSelectedItem().toString().equals("5 seconds"))
-        delay = 5000;
+    long delay = delayMicros(executorDelay.getSelectedItem().toString());
     int partials = (int)partialsSlider.getValue();
     if (partials == 0) partials = 1;
     FIXimulator.getApplication().startExecutor(delay, partials, quoteService);
@@ -1282,6 +1474,61 @@ private void partialsSliderChanged(ChangeEvent evt) { // GEN - FIRST:event_parti
     }
 } // GEN - LAST:event_partialsSliderChanged
 
+private void messageViewportChanged(ChangeEvent evt) { // GEN - FIRST:event_messageViewportChanged
+    int rows = messageScrollPane.getViewport().getExtentSize().height
+            / messageTable.getRowHeight() + 1;
+    ((MessageTableModel)messageTable.getModel()).setViewportRows(rows);
+} // GEN - LAST:event_messageViewportChanged
+
+private void messageFilterButtonActionPerformed(ActionEvent evt) { // GEN - FIRST:event_messageFilterButtonActionPerformed
+    String value = messageFilterText.getText().trim();
+    if (value.equals("")) {
+        messageFilterClearButtonActionPerformed(evt);
+        return;
+    }
+    String field = messageFilterField.getSelectedItem().toString();
+    int[] found;
+    if (field.equals("ClOrdID"))
+        found = FIXimulator.getMessageSet().search(MessageIndex.CLORDID, value);
+    else if (field.equals("OrderID"))
+        found = FIXimulator.getMessageSet().search(MessageIndex.ORDERID, value);
+    else if (field.equals("ExecID"))
+        found = FIXimulator.getMessageSet().search(MessageIndex.EXECID, value);
+    else if (field.equals("Symbol"))
+        found = FIXimulator.getMessageSet().search(MessageIndex.SYMBOL, value);
+    else if (field.equals("MsgType"))
+        found = FIXimulator.getMessageSet().search(MessageIndex.MSGTYPE, value);
+    else
+        found = FIXimulator.getMessageSet().searchOrder(value);
+    ((MessageTableModel)messageTable.getModel()).setFilter(found);
+} // GEN - LAST:event_messageFilterButtonActionPerformed
+
+private void messageFilterClearButtonActionPerformed(ActionEvent evt) { // GEN - FIRST:event_messageFilterClearButtonActionPerformed
+    messageFilterText.setText("");
+    ((MessageTableModel)messageTable.getModel()).setFilter(null);
+} // GEN - LAST:event_messageFilterClearButtonActionPerformed
+
+private void reportComboActionPerformed(ActionEvent evt) { // GEN - FIRST:event_reportComboActionPerformed
+    reportQueryText.setText(
+            QueryTableModel.REPORTS[reportCombo.getSelectedIndex()][1]);
+} // GEN - LAST:event_reportComboActionPerformed
+
+private void reportRunButtonActionPerformed(ActionEvent evt) { // GEN - FIRST:event_reportRunButtonActionPerformed
+    ((QueryTableModel)reportTable.getModel()).setQuery(reportQueryText.getText());
+} // GEN - LAST:event_reportRunButtonActionPerformed
+
+private void reportCancelButtonActionPerformed(ActionEvent evt) { // GEN - FIRST:event_reportCancelButtonActionPerformed
+    ((QueryTableModel)reportTable.getModel()).cancel();
+} // GEN - LAST:event_reportCancelButtonActionPerformed
+
+private void reportPreviousButtonActionPerformed(ActionEvent evt) { // GEN - FIRST:event_reportPreviousButtonActionPerformed
+    ((QueryTableModel)reportTable.getModel()).previousPage();
+} // GEN - LAST:event_reportPreviousButtonActionPerformed
+
+private void reportNextButtonActionPerformed(ActionEvent evt) { // GEN - FIRST:event_reportNextButtonActionPerformed
+    ((QueryTableModel)reportTable.getModel()).nextPage();
+} // GEN - LAST:event_reportNextButtonActionPerformed
+
 private void executionBustButtonActionPerformed(ActionEvent evt) { // GEN - FIRST:event_executionBustButtonActionPerformed
     int row = executionTable.getSelectedRow();
     // if there is a row selected
@@ -1289,7 +1536,9 @@ private void executionBustButtonActionPerformed(ActionEvent evt) { // GEN - FIRS
         row = executionTable.convertRowIndexToModel(row);
         Execution execution =
                 FIXimulator.getApplication().getExecutions().getExecution(row);
-        if (execution.getExecType().equals("Fill") ||
+        if (execution == null) {
+            System.out.println("Execution is no longer cached...");
+        } else if (execution.getExecType().equals("Fill") ||
              execution.getExecType().equals("Partial fill")) {
             FIXimulator.getApplication().bust(execution);
         } else {
@@ -1301,15 +1550,21 @@ private void executionBustButtonActionPerformed(ActionEvent evt) { // GEN - FIRS
 } // GEN - LAST:event_executionBustButtonActionPerformed
 
 private void executorDelayActionPerformed(ActionEvent evt) { // GEN - FIRST:event_executorDelayActionPerformed
-    int delay = 1;
-    String value = executorDelay.getSelectedItem().toString();
-    if (value.equals("10 ms")) delay = 10;
-    if (value.equals("100 ms")) delay = 100;
-    if (value.equals("1 second")) delay = 1000;
-    if (value.equals("5 seconds")) delay = 5000;
-    FIXimulator.getApplication().setNewExecutorDelay(delay);
+    FIXimulator.getApplication().setNewExecutorDelay(
+            delayMicros(executorDelay.getSelectedItem().toString()));
 } // GEN - LAST:event_executorDelayActionPerformed
 
+// The executor delay choices in microseconds
+private static long delayMicros(String value) {
+    if (value.equals("10 us")) return 10;
+    if (value.equals("100 us")) return 100;
+    if (value.equals("10 ms")) return 10000;
+    if (value.equals("100 ms")) return 100000;
+    if (value.equals("1 second")) return 1000000;
+    if (value.equals("5 seconds")) return 5000000;
+    return 1000;
+}
+
 private void autoReplaceActionPerformed(ActionEvent evt) { // GEN - FIRST:event_autoReplaceActionPerformed
     FIXimulator.getApplication().getSettings()
         .setBool("FIXimulatorAutoReplace",
@@ -1553,7 +1808,9 @@ private void executionCorrectButtonActionPerformed(ActionEvent evt) { // GEN - F
         row = executionTable.convertRowIndexToModel(row);
         Execution execution =
                 FIXimulator.getApplication().getExecutions().getExecution(row);
-        if (execution.getExecType().equals("Fill") ||
+        if (execution == null) {
+            System.out.println("Execution is no longer cached...");
+        } else if (execution.getExecType().equals("Fill") ||
              execution.getExecType().equals("Partial fill")) {
             dialogExecution = execution.clone();
             executionDialogShares.setValue(execution.getLastShares());
@@ -1594,6 +1851,7 @@ private void logToDBActionPerformed(ActionEvent evt) { // GEN - FIRST:event_logT
     private JCheckBox autoPendingReplace;
     private JCheckBox autoReplace;
     private JPanel autoResponsePanel;
+    private JLabel cacheUsageLabel;
     private JComboBox cachedObjectsCombo;
     private JLabel cachedObjectsLabel;
     private JButton cancelAcceptButton;
@@ -1632,6 +1890,10 @@ private void logToDBActionPerformed(ActionEvent evt) { // GEN - FIRST:event_logT
     private JPanel messageDetailPanel;
     private JScrollPane messageDetailScrollPane;
     private JTable messageDetailTable;
+    private JButton messageFilterButton;
+    private JButton messageFilterClearButton;
+    private JComboBox messageFilterField;
+    private JTextField messageFilterText;
     private JPanel messagePanel;
     private JScrollPane messageScrollPane;
     private JTable messageTable;
@@ -1646,12 +1908,25 @@ private void logToDBActionPerformed(ActionEvent evt) { // GEN - FIRST:event_logT
     private JLabel partialsLabel;
     private JLabel partialsNumber;
     private JSlider partialsSlider;
+    private JPanel positionPanel;
+    private JScrollPane positionScrollPane;
+    private JTable positionTable;
     private JComboBox pricePrecisionCombo;
     private JLabel pricePrecisionLabel;
     private JButton replaceAcceptButton;
     private JButton replacePendingButton;
     private JButton replaceRejectButton;
     private JSeparator replaceSeparator;
+    private JButton reportCancelButton;
+    private JComboBox reportCombo;
+    private JButton reportNextButton;
+    private JPanel reportPanel;
+    private JButton reportPreviousButton;
+    private JTextField reportQueryText;
+    private JButton reportRunButton;
+    private JScrollPane reportScrollPane;
+    private JLabel reportStatusLabel;
+    private JTable reportTable;
     private JButton saveSettingsButton;
     private JCheckBox sendOnBehalfOfCompID;
     private JCheckBox sendOnBehalfOfSubID;
@@ -0,0 +1,72 @@
+/*
+ * File     : JournalMessageTableModel.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : This class is the TableModel for the Message Table when
+ *            messages are journaled to disk.  Rows are paged in from
+ *            the journal on demand and only a small read-ahead window
+ *            around the visible rows is kept in memory.
+ *
+ */
+
+package org.fiximulator.ui;
+
+import org.fiximulator.core.FIXimulator;
+import org.fiximulator.core.LogMessage;
+import org.fiximulator.core.MessageJournal;
+
+import java.io.IOException;
+import java.util.List;
+
+public class JournalMessageTableModel extends MessageTableModel {
+    // rows kept per visible row: one screen behind and two ahead
+    private static final int READ_AHEAD_FACTOR = 3;
+    private MessageJournal journal = FIXimulator.getMessageSet().getJournal();
+    private LogMessage[] page = new LogMessage[0];
+    private int pageStart = 0;
+
+    public JournalMessageTableModel() {
+        super();
+    }
+
+    @Override
+    public int getRowCount() {
+        if (isFiltered()) return super.getRowCount();
+        return journal.getCount();
+    }
+
+    @Override
+    public LogMessage getMessage(int row) {
+        if (isFiltered()) return super.getMessage(row);
+        if (row < pageStart || row >= pageStart + page.length) {
+            loadPage(row);
+        }
+        if (row < pageStart || row >= pageStart + page.length) {
+            return null;
+        }
+        return page[row - pageStart];
+    }
+
+    @Override
+    public void setViewportRows(int viewportRows) {
+        if (viewportRows > 0 && viewportRows != this.viewportRows) {
+            page = new LogMessage[0];
+        }
+        super.setViewportRows(viewportRows);
+    }
+
+    private void loadPage(int row) {
+        int start = Math.max(0, row - viewportRows);
+        int end = start + viewportRows * READ_AHEAD_FACTOR;
+        try {
+            List<LogMessage> loaded = journal.read(start, end,
+                    FIXimulator.getApplication().getDataDictionary());
+            page = loaded.toArray(new LogMessage[loaded.size()]);
+            pageStart = start;
+        } catch (IOException e) {
+            e.printStackTrace();
+            page = new LogMessage[0];
+        }
+    }
+}
@@ -10,9 +10,7 @@
 
 package org.fiximulator.ui;
 
-import org.fiximulator.core.FIXimulator;
 import org.fiximulator.core.LogMessage;
-import org.fiximulator.core.LogMessageSet;
 import org.fiximulator.util.LogField;
 
 import java.util.ArrayList;
@@ -25,7 +23,6 @@ import javax.swing.table.AbstractTableModel;
 
 public class MessageDetailTableModel extends AbstractTableModel
         implements ListSelectionListener {
-    private static LogMessageSet messages = FIXimulator.getMessageSet();
     private JTable messageTable = null;
     private ArrayList<LogField> fields = new ArrayList<LogField>();
     private static String[] columns =
@@ -88,8 +85,9 @@ public class MessageDetailTableModel extends AbstractTableModel
             // if the first row is selected when it gets purged
             if (row != -1) {
                 row = messageTable.convertRowIndexToModel(row);
-                LogMessage msg = messages.getMessage(row);
-                updateMessageDetailsTable(msg);
+                LogMessage msg = ((MessageTableModel)messageTable.getModel())
+                        .getMessage(row);
+                if (msg != null) updateMessageDetailsTable(msg);
             }
         }
     }
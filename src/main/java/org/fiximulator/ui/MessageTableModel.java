@@ -4,6 +4,11 @@
  * Author   : Zoltan Feledy
  *
  * Contents : This class is the TableModel for the Message Table.
+ *            When filtered, the matching messages are looked up a page
+ *            at a time around the visible rows and kept until the view
+ *            moves past them.  The filter is changed from the session
+ *            thread, so a page is published together with the filter
+ *            and the row it starts at.
  *
  */
 
@@ -20,6 +25,11 @@ public class MessageTableModel extends AbstractTableModel {
     private static LogMessageSet messages = FIXimulator.getMessageSet();
     private static String[] columns =
         {"#", "Direction", "SendingTime", "Type", "Message"};
+    // filtered rows kept per visible row: one screen behind and two ahead
+    private static final int READ_AHEAD_FACTOR = 3;
+    private volatile int[] filter = null;
+    private volatile Page filterPage = null;
+    protected volatile int viewportRows = 40;
 
     public MessageTableModel() {
         messages.addCallback(this);
@@ -41,11 +51,57 @@ public class MessageTableModel extends AbstractTableModel {
     }
 
     public int getRowCount() {
+        int[] rows = filter;
+        if (rows != null) return rows.length;
         return messages.getCount();
     }
 
+    public LogMessage getMessage(int row) {
+        int[] rows = filter;
+        if (rows != null) return getFilteredMessage(rows, row);
+        return messages.getMessage(row);
+    }
+
+    private LogMessage getFilteredMessage(int[] rows, int row) {
+        if (row >= rows.length) return null;
+        Page page = filterPage;
+        if (page == null || !page.holds(rows, row)) {
+            int start = Math.max(0, row - viewportRows);
+            int end = Math.min(rows.length,
+                    start + viewportRows * READ_AHEAD_FACTOR);
+            page = new Page(rows, start,
+                    messages.getMessagesByIndex(rows, start, end));
+            filterPage = page;
+        }
+        return page.messages[row - page.start];
+    }
+
+    public void setViewportRows(int viewportRows) {
+        if (viewportRows > 0 && viewportRows != this.viewportRows) {
+            this.viewportRows = viewportRows;
+            filterPage = null;
+        }
+    }
+
+    /*
+     * Restricts the table to the given message numbers, as returned by
+     * the LogMessageSet search methods, or shows everything for null.
+     */
+    public void setFilter(int[] filter) {
+        synchronized (this) {
+            this.filter = filter;
+        }
+        filterPage = null;
+        fireTableDataChanged();
+    }
+
+    public boolean isFiltered() {
+        return filter != null;
+    }
+
     public Object getValueAt(int row, int column) {
-        LogMessage msg = messages.getMessage(row);
+        LogMessage msg = getMessage(row);
+        if (msg == null) return "";
         if (column == 0) return msg.getMessageIndex();
         if (column == 1) return (msg.isIncoming() ? "incoming" : "outgoing");
         if (column == 2) return UtcTimestampConverter.convert(msg.getSendingTime(), true);
@@ -55,6 +111,36 @@ public class MessageTableModel extends AbstractTableModel {
     }
 
     public void update() {
+        // without a journal evicted messages leave the filter
+        int[] rows = filter;
+        if (rows != null) {
+            int[] available = messages.available(rows);
+            // a page of the old filter no longer holds any row, and a
+            // filter set meanwhile on the EDT is kept
+            if (available != rows) {
+                synchronized (this) {
+                    if (filter == rows) filter = available;
+                }
+            }
+        }
         fireTableDataChanged();
     }
+
+    // Messages of the filter rows from start on
+    private static class Page {
+        private final int[] rows;
+        private final int start;
+        private final LogMessage[] messages;
+
+        private Page(int[] rows, int start, LogMessage[] messages) {
+            this.rows = rows;
+            this.start = start;
+            this.messages = messages;
+        }
+
+        private boolean holds(int[] filter, int row) {
+            return rows == filter && row >= start
+                    && row < start + messages.length;
+        }
+    }
 }
@@ -0,0 +1,64 @@
+/*
+ * File     : PositionTableModel.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : This class is the TableModel for the Position Table.
+ *
+ */
+
+package org.fiximulator.ui;
+
+import org.fiximulator.core.FIXimulator;
+import org.fiximulator.core.PositionBook;
+import org.fiximulator.core.PositionBook.Position;
+
+import javax.swing.table.AbstractTableModel;
+
+public class PositionTableModel extends AbstractTableModel {
+    private static PositionBook positions =
+            FIXimulator.getApplication().getPositions();
+    private static String[] columns =
+        {"Symbol", "Side", "Orders", "Executed", "Notional", "VWAP", "Open"};
+
+    public PositionTableModel() {
+        FIXimulator.getApplication().getPositions().addCallback(this);
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns[column];
+    }
+
+    @Override
+    public Class getColumnClass(int column) {
+        if (column == 2) return Integer.class;
+        if (column >= 3) return Double.class;
+        return String.class;
+    }
+
+    public int getRowCount() {
+        return positions.getCount();
+    }
+
+    public Object getValueAt(int row, int column) {
+        Position position = positions.getPosition(row);
+        if (position == null) return null;
+        if (column == 0) return position.getSymbol();
+        if (column == 1) return position.getSide();
+        if (column == 2) return position.getOrders();
+        if (column == 3) return position.getExecuted();
+        if (column == 4) return position.getNotional();
+        if (column == 5) return position.getVWAP();
+        if (column == 6) return position.getOpen();
+        return "";
+    }
+
+    public void update() {
+        fireTableDataChanged();
+    }
+}
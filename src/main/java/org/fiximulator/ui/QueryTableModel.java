@@ -4,46 +4,93 @@
  * Author   : Zoltan Feledy
  *
  * Contents : This class is the TableModel for the SQL queries for
- *            reporting.
+ *            reporting.  Queries run on a background thread and the
+ *            rows are streamed into the table a page at a time, up to
+ *            FIXimulatorReportMaxRows rows, so a large result can neither
+ *            freeze the UI nor exhaust the heap.  A SELECT that ends in
+ *            an ORDER BY is shown that many rows at a time, with LIMIT
+ *            and OFFSET bound as parameters so every page runs the same
+ *            prepared statement, and Previous and Next move between
+ *            them.  Without an ORDER BY the pages would not be stable,
+ *            so any other query stops at the limit and says so.
  *
  */
 
 package org.fiximulator.ui;
 
+import org.fiximulator.core.ConnectionPool;
 import org.fiximulator.core.FIXimulator;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
-import java.sql.Statement;
-import java.util.Vector;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
 
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.SwingWorker;
 import javax.swing.table.AbstractTableModel;
 
 class QueryTableModel extends AbstractTableModel {
-    Vector results = new Vector();
-    private static String[] columns = {"Results"};
-    Connection connection;
-    Statement statement;
-    String url;
-    String driver;
-    String user;
-    String pass;
+    // a SELECT ending in an ORDER BY, and one with a LIMIT of its own
+    private static final Pattern ORDERED =
+            Pattern.compile("(?is)^select\\b.*\\border\\s+by\\b[^()]*$");
+    private static final Pattern LIMITED =
+            Pattern.compile("(?is)\\blimit\\b[^()]*$");
+
+    // Canned reports, by name and query
+    static final String[][] REPORTS = {
+        {"Recent messages",
+         "SELECT time, sendercompid, targetcompid, text FROM messages_log "
+         + "ORDER BY id DESC LIMIT 500"},
+        {"Recent events",
+         "SELECT time, sendercompid, targetcompid, text FROM event_log "
+         + "ORDER BY id DESC LIMIT 500"},
+        {"Sessions",
+         "SELECT beginstring, sendercompid, targetcompid, creation_time, "
+         + "incoming_seqnum, outgoing_seqnum FROM sessions"},
+        {"Message store",
+         "SELECT sendercompid, targetcompid, msgseqnum, message "
+         + "FROM messages ORDER BY msgseqnum DESC LIMIT 500"}
+    };
+
+    private List<String[]> results = new ArrayList<String[]>();
+    private String[] columns = {"Results"};
+    private int pageSize = 500;
+    private int maxRows = 10000;
+    private QueryWorker worker = null;
+    private JLabel status = null;
+    private JButton previousButton = null;
+    private JButton nextButton = null;
+    private String query = null;
+    private int offset = 0;
+    private boolean more = false;
 
     public QueryTableModel() {
         try {
-            url = FIXimulator.getApplication().getSettings()
-                    .getString("JdbcURL");
-            driver = FIXimulator.getApplication().getSettings()
-                    .getString("JdbcDriver");
-            user = FIXimulator.getApplication().getSettings()
-                    .getString("JdbcUser");
-            pass = FIXimulator.getApplication().getSettings()
-                    .getString("JdbcPassword");
+            pageSize = (int)FIXimulator.getApplication().getSettings()
+                    .getLong("FIXimulatorReportPageSize");
+        } catch (Exception e) {}
+        try {
+            maxRows = (int)FIXimulator.getApplication().getSettings()
+                    .getLong("FIXimulatorReportMaxRows");
         } catch (Exception e) {}
     }
 
+    public void addStatusCallback(JLabel status) {
+        this.status = status;
+    }
+
+    public void addPageCallback(JButton previousButton, JButton nextButton) {
+        this.previousButton = previousButton;
+        this.nextButton = nextButton;
+        updatePageButtons();
+    }
+
     public int getRowCount() {
         return results.size();
     }
@@ -58,49 +105,195 @@ class QueryTableModel extends AbstractTableModel {
     }
 
     public Object getValueAt(int row, int column) {
-        return ((String[])results.elementAt(row))[column];
+        return results.get(row)[column];
     }
 
     public void setQuery(String query) {
-        results = new Vector();
+        this.query = query;
+        run(0);
+    }
 
-        try {
-            Class.forName(driver).newInstance();
-            connection = DriverManager.getConnection(url, user, pass);
+    public void nextPage() {
+        if (query != null && more) run(offset + maxRows);
+    }
+
+    public void previousPage() {
+        if (query != null && offset > 0) run(Math.max(0, offset - maxRows));
+    }
+
+    public void cancel() {
+        if (worker != null && !worker.isDone()) {
+            worker.cancelQuery();
+            setStatus(results.size() + " rows, cancelled");
+            updatePageButtons();
+        }
+    }
+
+    private void run(int offset) {
+        cancel();
+        this.offset = offset;
+        more = false;
+        results = new ArrayList<String[]>();
+        fireTableDataChanged();
+        setStatus("Running...");
+        String paged = pagedQuery(query);
+        worker = paged != null
+                ? new QueryWorker(paged, true, offset)
+                : new QueryWorker(query, false, 0);
+        worker.execute();
+        updatePageButtons();
+    }
+
+    /*
+     * An ordered SELECT reads one row past the limit, which tells
+     * whether there is another page, or null when the query can not be
+     * paged.
+     */
+    private static String pagedQuery(String query) {
+        String select = query.trim();
+        while (select.endsWith(";")) {
+            select = select.substring(0, select.length() - 1).trim();
         }
-        catch (Exception e) {
-            System.out.println("Could not initialize the database.");
-            e.printStackTrace();
+        if (!ORDERED.matcher(select).find()
+                || LIMITED.matcher(select).find()) {
+            return null;
         }
+        return select + " LIMIT ? OFFSET ?";
+    }
 
-        try {
-            statement = connection.createStatement();
-            ResultSet rs = statement.executeQuery(query);
-            ResultSetMetaData meta = (ResultSetMetaData) rs.getMetaData();
-            int fields = meta.getColumnCount();
-            columns = new String[fields];
-            for (int i = 0; i < fields; i++) {
-                columns[i] = meta.getColumnName(i + 1);
+    private void updatePageButtons() {
+        boolean running = worker != null && !worker.isDone();
+        if (previousButton != null) {
+            previousButton.setEnabled(!running && offset > 0);
+        }
+        if (nextButton != null) nextButton.setEnabled(!running && more);
+    }
+
+    private void setStatus(String text) {
+        if (status != null) status.setText(text);
+    }
+
+    /*
+     * Runs the query with a fetch size of one page and publishes each
+     * page to the EDT as soon as it has been read.
+     */
+    private class QueryWorker extends SwingWorker<Integer, List<String[]>> {
+        private final String query;
+        private final boolean pageable;
+        private final int pageOffset;
+        private volatile PreparedStatement statement = null;
+        private String[] resultColumns = null;
+        private volatile boolean truncated = false;
+
+        QueryWorker(String query, boolean pageable, int pageOffset) {
+            this.query = query;
+            this.pageable = pageable;
+            this.pageOffset = pageOffset;
+        }
+
+        void cancelQuery() {
+            cancel(false);
+            PreparedStatement running = statement;
+            if (running != null) {
+                try {
+                    running.cancel();
+                } catch (SQLException e) {}
             }
-            while (rs.next()) {
-                String[] record = new String[fields];
+        }
+
+        @Override
+        protected Integer doInBackground() throws Exception {
+            Connection connection = ConnectionPool.getConnection(
+                    FIXimulator.getApplication().getSettings());
+            int rows = 0;
+            PreparedStatement prepared = null;
+            ResultSet rs = null;
+            try {
+                prepared = connection.prepareStatement(query,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY);
+                statement = prepared;
+                prepared.setFetchSize(pageSize);
+                prepared.setMaxRows(maxRows + 1);
+                if (pageable) {
+                    prepared.setInt(1, maxRows + 1);
+                    prepared.setInt(2, pageOffset);
+                }
+                rs = prepared.executeQuery();
+                ResultSetMetaData meta = rs.getMetaData();
+                int fields = meta.getColumnCount();
+                resultColumns = new String[fields];
                 for (int i = 0; i < fields; i++) {
-                    record[i] = rs.getString(i + 1);
+                    resultColumns[i] = meta.getColumnName(i + 1);
+                }
+                List<String[]> page = new ArrayList<String[]>(pageSize);
+                while (!isCancelled() && rs.next()) {
+                    if (rows == maxRows) {
+                        truncated = true;
+                        break;
+                    }
+                    String[] record = new String[fields];
+                    for (int i = 0; i < fields; i++) {
+                        record[i] = rs.getString(i + 1);
+                    }
+                    page.add(record);
+                    rows++;
+                    if (page.size() == pageSize) {
+                        publish(page);
+                        page = new ArrayList<String[]>(pageSize);
+                    }
                 }
-                results.addElement(record);
+                if (!page.isEmpty() || rows == 0) publish(page);
+            } finally {
+                statement = null;
+                try {
+                    if (rs != null) rs.close();
+                } catch (SQLException e) {}
+                try {
+                    if (prepared != null) prepared.close();
+                } catch (SQLException e) {}
+                // returns the connection to the pool
+                connection.close();
+            }
+            return rows;
+        }
+
+        @Override
+        protected void process(List<List<String[]>> pages) {
+            if (isCancelled() || worker != this) return;
+            if (resultColumns != columns && resultColumns != null) {
+                columns = resultColumns;
+                fireTableStructureChanged();
+            }
+            for (List<String[]> page : pages) {
+                if (page.isEmpty()) continue;
+                int first = results.size();
+                results.addAll(page);
+                fireTableRowsInserted(first, results.size() - 1);
             }
-            statement.close();
-            rs.close();
-            fireTableChanged(null);
-        } catch (Exception e) {
-            results = new Vector();
-            e.printStackTrace();
+            setStatus(results.size() + " rows...");
         }
 
-        if (connection != null) {
+        @Override
+        protected void done() {
+            if (isCancelled() || worker != this) return;
             try {
-                connection.close();
-            } catch (Exception e) {}
+                int rows = get();
+                more = truncated && pageable;
+                if (offset == 0 && !more) {
+                    setStatus(rows + " rows" + (truncated ? ", truncated at "
+                            + maxRows + ", end with an ORDER BY to page"
+                            : ""));
+                } else {
+                    setStatus("rows " + (rows == 0 ? offset : offset + 1)
+                            + " to " + (offset + rows)
+                            + (more ? ", more with Next" : ""));
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                setStatus("Query failed");
+            }
+            updatePageButtons();
         }
     }
 }
@@ -0,0 +1,198 @@
+/*
+ * File     : AsyncJdbcLogFactoryTest.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Tests the AsyncJdbcLogFactory against an in-memory H2
+ *            database: the columns each record lands in, that full
+ *            batches are written without waiting for the flush interval
+ *            while a partial one waits for it or for stop, and that
+ *            records offered to a full queue are counted as dropped.
+ *
+ */
+
+package org.fiximulator.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import quickfix.Log;
+import quickfix.SessionID;
+import quickfix.SessionSettings;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class AsyncJdbcLogFactoryTest {
+    // the pool is registered once, so every test uses the same database
+    private static final String URL = "jdbc:h2:mem:fiximulator;"
+            + "MODE=MySQL;DB_CLOSE_DELAY=-1;IGNORE_UNKNOWN_SETTINGS=TRUE";
+    private static final long TIMEOUT = 10000;
+
+    @BeforeClass
+    public static void createTables() throws Exception {
+        Class.forName("org.h2.Driver");
+        String[] tables = {"columns_messages", "columns_events",
+                "batches_messages", "batches_events",
+                "dropped_messages", "dropped_events"};
+        Connection connection = DriverManager.getConnection(URL, "sa", "");
+        try {
+            Statement statement = connection.createStatement();
+            for (String table : tables) {
+                statement.execute("CREATE TABLE " + table + " ("
+                        + "id INT AUTO_INCREMENT PRIMARY KEY, "
+                        + "time TIMESTAMP NOT NULL, "
+                        + "beginstring VARCHAR(8) NOT NULL, "
+                        + "sendercompid VARCHAR(64) NOT NULL, "
+                        + "sendersubid VARCHAR(64) NOT NULL, "
+                        + "senderlocid VARCHAR(64) NOT NULL, "
+                        + "targetcompid VARCHAR(64) NOT NULL, "
+                        + "targetsubid VARCHAR(64) NOT NULL, "
+                        + "targetlocid VARCHAR(64) NOT NULL, "
+                        + "session_qualifier VARCHAR(64) NOT NULL, "
+                        + "text TEXT NOT NULL)");
+            }
+            statement.close();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void recordsLandInTheirColumns() throws Exception {
+        AsyncJdbcLogFactory factory = factory("columns", 100, 50, 100);
+        SessionID sessionID = new SessionID("FIX.4.2", "FIXIMULATOR", "BANZAI");
+        Log log = factory.create(sessionID);
+        log.onIncoming("8=FIX.4.2|35=D|");
+        log.onOutgoing("8=FIX.4.2|35=8|");
+        log.onEvent("Logon");
+        factory.create().onEvent("Started");
+        waitForWritten(factory, 4);
+        factory.stop();
+
+        assertEquals(2, count("columns_messages"));
+        assertEquals(2, count("columns_events"));
+        Connection connection = DriverManager.getConnection(URL, "sa", "");
+        try {
+            Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery("SELECT time, beginstring,"
+                    + " sendercompid, sendersubid, targetcompid, text"
+                    + " FROM columns_messages ORDER BY id");
+            rs.next();
+            assertNotNull(rs.getTimestamp(1));
+            assertEquals("FIX.4.2", rs.getString(2));
+            assertEquals("FIXIMULATOR", rs.getString(3));
+            assertEquals("", rs.getString(4));
+            assertEquals("BANZAI", rs.getString(5));
+            assertEquals("8=FIX.4.2|35=D|", rs.getString(6));
+            rs.next();
+            assertEquals("8=FIX.4.2|35=8|", rs.getString(6));
+            rs.close();
+
+            // an event without a session has empty session columns
+            rs = statement.executeQuery("SELECT beginstring, sendercompid,"
+                    + " text FROM columns_events ORDER BY id");
+            rs.next();
+            assertEquals("Logon", rs.getString(3));
+            rs.next();
+            assertEquals("", rs.getString(1));
+            assertEquals("", rs.getString(2));
+            assertEquals("Started", rs.getString(3));
+            rs.close();
+            statement.close();
+        } finally {
+            connection.close();
+        }
+        assertEquals(0, factory.getDropped());
+    }
+
+    @Test
+    public void fullBatchesDoNotWaitForTheFlushInterval() throws Exception {
+        // a flush interval the test would never outlast
+        AsyncJdbcLogFactory factory = factory("batches", 4, 60000, 100);
+        Log log = factory.create(
+                new SessionID("FIX.4.2", "FIXIMULATOR", "BANZAI"));
+        for (int i = 0; i < 10; i++) {
+            log.onIncoming("8=FIX.4.2|34=" + i + "|");
+        }
+        waitForWritten(factory, 8);
+        assertEquals(8, count("batches_messages"));
+
+        // the last two wait for a full batch or the interval
+        Thread.sleep(200);
+        assertEquals(8, factory.getWritten());
+
+        // and are written when the writer stops
+        factory.stop();
+        assertEquals(10, factory.getWritten());
+        assertEquals(10, count("batches_messages"));
+    }
+
+    @Test
+    public void recordsOverAFullQueueAreDropped() throws Exception {
+        AsyncJdbcLogFactory factory = factory("dropped", 100, 50, 10);
+        // nothing takes from the queue while the writer is stopped
+        factory.stop();
+        Log log = factory.create(
+                new SessionID("FIX.4.2", "FIXIMULATOR", "BANZAI"));
+        for (int i = 0; i < 15; i++) {
+            log.onIncoming("8=FIX.4.2|34=" + i + "|");
+        }
+        assertEquals(10, factory.getBacklog());
+        assertEquals(5, factory.getDropped());
+
+        factory.start();
+        waitForWritten(factory, 10);
+        factory.stop();
+        assertEquals(10, count("dropped_messages"));
+        assertEquals(5, factory.getDropped());
+    }
+
+    private static AsyncJdbcLogFactory factory(String prefix, long batchSize,
+            long flushInterval, long queueSize) {
+        SessionSettings settings = new SessionSettings();
+        settings.setString("JdbcDriver", "org.h2.Driver");
+        settings.setString("JdbcURL", URL);
+        settings.setString("JdbcUser", "sa");
+        settings.setString("JdbcPassword", "");
+        settings.setString("JdbcLogIncomingTable", prefix + "_messages");
+        settings.setString("JdbcLogOutgoingTable", prefix + "_messages");
+        settings.setString("JdbcLogEventTable", prefix + "_events");
+        settings.setLong("FIXimulatorLogBatchSize", batchSize);
+        settings.setLong("FIXimulatorLogFlushInterval", flushInterval);
+        settings.setLong("FIXimulatorLogQueueSize", queueSize);
+        return new AsyncJdbcLogFactory(settings);
+    }
+
+    private static void waitForWritten(AsyncJdbcLogFactory factory,
+            long written) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (factory.getWritten() < written
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(written, factory.getWritten());
+    }
+
+    private static int count(String table) throws SQLException {
+        Connection connection = DriverManager.getConnection(URL, "sa", "");
+        try {
+            Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery(
+                    "SELECT COUNT(*) FROM " + table);
+            rs.next();
+            int count = rs.getInt(1);
+            rs.close();
+            statement.close();
+            return count;
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * File     : CrossingEngineTest.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Tests that an order replaced after a partial fill is
+ *            crossed for no more than its OrderQty.
+ *
+ */
+
+package org.fiximulator.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class CrossingEngineTest {
+
+    @Test
+    public void replacedPartialFillDoesNotOverfill() {
+        CrossingEngine engine = new CrossingEngine();
+        engine.submit(order('2', 600, 10.00));
+        Order original = order('1', 1000, 10.00);
+        apply(engine.submit(original), original);
+        assertEquals(Fixed.qty(600), Fixed.qty(original.getExecuted()));
+        assertEquals(Fixed.qty(400), Fixed.qty(original.getOpen()));
+
+        // replaced with the same OrderQty at a better price
+        engine.remove(original);
+        Order replacement = order('1', 1000, 10.50);
+        replacement.replaces(original);
+        assertEquals(Fixed.qty(400), Fixed.qty(replacement.getOpen()));
+        assertEquals(Fixed.qty(600), Fixed.qty(replacement.getExecuted()));
+
+        engine.submit(order('2', 1000, 10.25));
+        apply(engine.submit(replacement), replacement);
+        assertEquals(Fixed.qty(1000), Fixed.qty(replacement.getExecuted()));
+        assertEquals(0, Fixed.qty(replacement.getOpen()));
+        assertEquals(Fixed.price(10.10), Fixed.round(
+                Fixed.price(replacement.getAvgPx()), 2));
+    }
+
+    @Test
+    public void replacementBelowTheExecutedQuantityHasNothingOpen() {
+        Order original = order('1', 1000, 10.00);
+        original.setExecuted(800);
+        original.setOpen(200);
+        Order replacement = order('1', 500, 10.00);
+        replacement.replaces(original);
+        assertEquals(0, Fixed.qty(replacement.getOpen()));
+        CrossingEngine engine = new CrossingEngine();
+        engine.submit(order('2', 1000, 10.00));
+        assertEquals(0, engine.submit(replacement).size());
+    }
+
+    private static Order order(char side, double quantity, double limit) {
+        Order order = new Order();
+        order.setSymbol("IBM");
+        order.setSide(side);
+        order.setType('2');
+        order.setQuantity(quantity);
+        order.setOpen(quantity);
+        order.setLimit(limit);
+        order.setStatus('0');
+        return order;
+    }
+
+    // As FIXimulatorApplication.execute applies the fills to an order
+    private static void apply(List<Fill> fills, Order order) {
+        for (Fill fill : fills) {
+            if (fill.getOrder() != order) continue;
+            long executed = Fixed.qty(order.getExecuted());
+            long avgPx = Fixed.avgPx(executed, Fixed.price(order.getAvgPx()),
+                    fill.getQty(), fill.getPrice());
+            order.setAvgPx(Fixed.toPrice(avgPx));
+            order.setExecuted(Fixed.toQty(executed + fill.getQty()));
+            order.setOpen(Fixed.toQty(
+                    Fixed.qty(order.getOpen()) - fill.getQty()));
+        }
+    }
+}
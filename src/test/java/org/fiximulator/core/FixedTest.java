@@ -0,0 +1,143 @@
+/*
+ * File     : FixedTest.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Property tests for Fixed.  Random orders are worked
+ *            through many partials the way Executor.sendFill does and
+ *            checked against exact BigDecimal arithmetic.  The seeds
+ *            are fixed so a failure can be replayed.
+ *
+ */
+
+package org.fiximulator.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Random;
+
+public class FixedTest {
+    private static final int ORDERS = 2000;
+    private static final int PRICE_PRECISION = 4;
+
+    @Test
+    public void cumQtyPlusLeavesQtyIsOrderQty() {
+        Random random = new Random(42);
+        for (int i = 0; i < ORDERS; i++) {
+            // up to two decimals, as read from OrderQty
+            double quantity = (1 + random.nextInt(10000000)) / 100.0;
+            long orderQty = Fixed.qty(quantity);
+            long open = orderQty;
+            long executed = 0;
+            while (open > 0) {
+                long fill = Math.min(open,
+                        Fixed.wholeShares(1 + random.nextInt(50000)));
+                if (fill == 0) fill = open;
+                open -= fill;
+                executed += fill;
+                assertEquals(orderQty, executed + open);
+                // and after the round trip through the doubles on Order
+                assertEquals(orderQty, Fixed.qty(Fixed.toQty(executed))
+                        + Fixed.qty(Fixed.toQty(open)));
+                // the doubles are the closest ones to the decimal amounts
+                assertEquals(BigDecimal.valueOf(executed, 2).doubleValue(),
+                        Fixed.toQty(executed), 0.0);
+                assertEquals(BigDecimal.valueOf(open, 2).doubleValue(),
+                        Fixed.toQty(open), 0.0);
+            }
+        }
+    }
+
+    /*
+     * The order keeps its AvgPx to 1e-8 and only the reported AvgPx is
+     * rounded, so the reported AvgPx stays within half a tick, plus the
+     * 1e-8 rounding of each partial, of the exact VWAP.
+     */
+    @Test
+    public void avgPxStaysWithHalfATickOfVwapOverManyPartials() {
+        Random random = new Random(7);
+        long tick = Fixed.PRICE_SCALE / 10000;
+        for (int i = 0; i < ORDERS; i++) {
+            int partials = 1 + random.nextInt(500);
+            long executed = 0;
+            long avgPx = 0;
+            BigInteger notional = BigInteger.ZERO;
+            for (int j = 0; j < partials; j++) {
+                long qty = Fixed.QTY_SCALE * (1 + random.nextInt(1000));
+                long price = Fixed.round(
+                        Fixed.price(1 + random.nextDouble() * 500),
+                        PRICE_PRECISION);
+                // as Executor.sendFill, through the double on Order
+                avgPx = Fixed.price(Fixed.toPrice(
+                        Fixed.avgPx(executed, avgPx, qty, price)));
+                executed += qty;
+                notional = notional.add(BigInteger.valueOf(qty)
+                        .multiply(BigInteger.valueOf(price)));
+
+                long vwap = new BigDecimal(notional)
+                        .divide(new BigDecimal(executed), 0,
+                                RoundingMode.HALF_UP).longValue();
+                long reported = Fixed.round(avgPx, PRICE_PRECISION);
+                assertTrue("partial " + j + " of order " + i,
+                        Math.abs(reported - vwap) <= tick / 2 + j + 1);
+                assertTrue(Math.abs(avgPx - vwap) <= j + 1);
+            }
+        }
+    }
+
+    @Test
+    public void roundIsHalfAwayFromZero() {
+        Random random = new Random(11);
+        for (int i = 0; i < 100000; i++) {
+            long price = random.nextLong() / 1000;
+            int decimals = random.nextInt(Fixed.PRICE_DECIMALS + 1);
+            long expected = BigDecimal.valueOf(price, Fixed.PRICE_DECIMALS)
+                    .setScale(decimals, RoundingMode.HALF_UP)
+                    .setScale(Fixed.PRICE_DECIMALS).unscaledValue()
+                    .longValue();
+            assertEquals(expected, Fixed.round(price, decimals));
+        }
+    }
+
+    @Test
+    public void avgPxIsExactlyRounded() {
+        Random random = new Random(3);
+        for (int i = 0; i < 100000; i++) {
+            // large enough that the products need the BigInteger path
+            long qty1 = random.nextInt(Integer.MAX_VALUE) * 100L;
+            long qty2 = (random.nextInt(2000000) - 1000000) * 100L;
+            long px1 = random.nextInt(Integer.MAX_VALUE) * 50L;
+            long px2 = random.nextInt(Integer.MAX_VALUE) * 50L;
+            if (qty1 + qty2 == 0) continue;
+            BigInteger notional = BigInteger.valueOf(qty1)
+                    .multiply(BigInteger.valueOf(px1))
+                    .add(BigInteger.valueOf(qty2)
+                    .multiply(BigInteger.valueOf(px2)));
+            long expected = new BigDecimal(notional)
+                    .divide(BigDecimal.valueOf(qty1 + qty2), 0,
+                            RoundingMode.HALF_UP).longValue();
+            assertEquals(expected, Fixed.avgPx(qty1, px1, qty2, px2));
+        }
+    }
+
+    @Test
+    public void mulDivIsExactlyRounded() {
+        Random random = new Random(5);
+        for (int i = 0; i < 100000; i++) {
+            long a = random.nextLong() >> random.nextInt(40);
+            long b = random.nextLong() >> (24 + random.nextInt(40));
+            long c = 1 + ((random.nextLong() >>> 1) >> random.nextInt(60));
+            BigDecimal exact = new BigDecimal(BigInteger.valueOf(a)
+                    .multiply(BigInteger.valueOf(b)))
+                    .divide(BigDecimal.valueOf(c), 0, RoundingMode.HALF_UP);
+            if (exact.toBigInteger().bitLength() > 63) continue;
+            assertEquals(exact.longValue(), Fixed.mulDiv(a, b, c));
+        }
+    }
+}
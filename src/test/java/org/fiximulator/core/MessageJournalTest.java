@@ -0,0 +1,66 @@
+/*
+ * File     : MessageJournalTest.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Tests that a message number that was never journaled
+ *            reads back as a gap instead of shifting the later messages,
+ *            and that the queued messages are written before close.
+ *
+ */
+
+package org.fiximulator.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+public class MessageJournalTest {
+
+    @Test
+    public void skippedNumbersDoNotShiftLaterMessages() throws IOException {
+        File file = new File(
+                Files.createTempDirectory("journal").toFile(), "test.jnl");
+        MessageJournal journal = new MessageJournal(file);
+        journal.append(message(1));
+        journal.append(message(2));
+        // 3 never made it to the journal
+        journal.append(message(4));
+        journal.append(message(5));
+        journal.close();
+
+        journal = new MessageJournal(file);
+        assertEquals(5, journal.getCount());
+        List<String> raw = journal.readRawMessages(0, 5);
+        assertEquals(5, raw.size());
+        assertEquals(raw(1), raw.get(0));
+        assertEquals(raw(2), raw.get(1));
+        assertNull(raw.get(2));
+        assertEquals(raw(4), raw.get(3));
+        assertEquals(raw(5), raw.get(4));
+
+        // a page starting in the gap
+        raw = journal.readRawMessages(2, 4);
+        assertNull(raw.get(0));
+        assertEquals(raw(4), raw.get(1));
+        assertEquals(4, journal.read(3, null).getMessageIndex());
+        assertNull(journal.read(2, null));
+        journal.close();
+    }
+
+    // Without a MsgType the message does not need a dictionary
+    private static LogMessage message(int messageIndex) {
+        return new LogMessage(messageIndex, true, null,
+                raw(messageIndex), null);
+    }
+
+    private static String raw(int messageIndex) {
+        return "8=FIX.4.2|34=" + messageIndex + "|";
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * File     : OrderSetTest.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Tests that the orders closed by a cancel or a replace are
+ *            evicted like any other done order, while the orders still
+ *            working stay cached, and that evicted orders are found in
+ *            the OrderIndex.
+ *
+ */
+
+package org.fiximulator.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class OrderSetTest {
+    private static final int LIMIT = 50;
+    private static final int ORDERS = 5000;
+
+    @Test
+    public void canceledOrdersStayWithinTheLimit() {
+        OrderSet orders = new OrderSet();
+        orders.setFixedLimit(LIMIT);
+        for (int i = 0; i < ORDERS; i++) {
+            Order original = order("N" + i, null);
+            orders.add(original, false);
+            Order request = order("C" + i, "N" + i);
+            orders.add(request, false);
+            request.setStatus('4');
+            orders.update(request);
+            orders.close(original, '4');
+            assertTrue(orders.getCount() <= LIMIT);
+        }
+        assertEquals(LIMIT, orders.getCount());
+        assertEquals(2 * ORDERS - LIMIT, orders.getEvictions());
+    }
+
+    @Test
+    public void replacementsKeepWorkingWhileTheOriginalsAreEvicted() {
+        OrderSet orders = new OrderSet();
+        orders.setFixedLimit(LIMIT);
+        Order[] replacements = new Order[LIMIT / 2];
+        for (int i = 0; i < ORDERS; i++) {
+            Order original = order("N" + i, null);
+            orders.add(original, false);
+            Order replacement = order("R" + i, "N" + i);
+            orders.add(replacement, false);
+            // the replacement reports Replaced while it works
+            replacement.setStatus('5');
+            orders.update(replacement);
+            orders.close(original, '5');
+            assertTrue(original.isDone());
+            assertFalse(replacement.isDone());
+            if (i < replacements.length) {
+                replacements[i] = replacement;
+            } else {
+                replacement.setStatus('2');
+                replacement.setOpen(0);
+                orders.update(replacement);
+            }
+        }
+        assertEquals(LIMIT, orders.getCount());
+        for (Order replacement : replacements) {
+            assertNotNull(orders.getOrder(replacement.getID()));
+        }
+    }
+
+    @Test
+    public void onlyEvictedOrdersAreWrittenToTheIndex() throws IOException {
+        File directory = Files.createTempDirectory("index").toFile();
+        OrderIndex index = new OrderIndex(directory, "20260101");
+        OrderSet orders = new OrderSet();
+        orders.setFixedLimit(LIMIT);
+        orders.setOrderIndex(index);
+        // enough keys for the table to grow
+        int count = 20000;
+        for (int i = 0; i < count; i++) {
+            Order order = order("N" + i, null);
+            orders.add(order, false);
+            order.setExecuted(100);
+            order.setOpen(0);
+            order.setStatus('2');
+            orders.update(order);
+        }
+        assertEquals(LIMIT, orders.getCount());
+        // OrderID and ClOrdID of each evicted order
+        assertEquals(2 * (count - LIMIT), index.getCount());
+        Order evicted = orders.getOrder("N0");
+        assertNotNull(evicted);
+        assertEquals('2', evicted.getFIXStatus());
+        assertEquals(100.0, evicted.getExecuted(), 0.0);
+        index.close();
+    }
+
+    private static Order order(String clientID, String origClientID) {
+        Order order = new Order();
+        order.setClientID(clientID);
+        order.setOrigClientID(origClientID);
+        order.setSymbol("IBM");
+        order.setSide('1');
+        order.setQuantity(100);
+        order.setOpen(100);
+        order.setStatus('0');
+        return order;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * File     : PositionBookTest.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Tests that a replacement takes over the open quantity of
+ *            the order it replaces and that the VWAP is rounded the
+ *            same way past the long range.
+ *
+ */
+
+package org.fiximulator.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PositionBookTest {
+
+    @Test
+    public void replacementKeepsTheOpenQuantity() {
+        PositionBook positions = new PositionBook();
+        Order original = order(1000);
+        positions.added(original);
+        // 300 filled before the replace
+        original.setOpen(700);
+        original.setExecuted(300);
+        original.setStatus('1');
+        positions.fill(original, Fixed.qty(300), Fixed.price(10));
+
+        // as FIXimulatorApplication.replace, up to 1500
+        Order replacement = order(1500);
+        replacement.replaces(original);
+        replacement.setStatus('5');
+        positions.closed(original);
+        positions.added(replacement);
+
+        PositionBook.Position position = positions.getPosition(0);
+        assertEquals(1200.0, position.getOpen(), 0.0);
+        assertEquals(300.0, position.getExecuted(), 0.0);
+        assertEquals(2, position.getOrders());
+
+        // the replacement fills and stops counting as open
+        replacement.setOpen(0);
+        replacement.setExecuted(1500);
+        replacement.setStatus('2');
+        positions.fill(replacement, Fixed.qty(1200), Fixed.price(10));
+        position = positions.getPosition(0);
+        assertEquals(0.0, position.getOpen(), 0.0);
+        assertEquals(1500.0, position.getExecuted(), 0.0);
+    }
+
+    @Test
+    public void vwapIsRoundedPastTheLongRange() {
+        PositionBook positions = new PositionBook();
+        Order order = order(3000000000.0);
+        positions.added(order);
+        long qty = Fixed.qty(1000000000);
+        // 100.00000000, 100.00000001 and 100.00000001 average to
+        // 100.0000000067, which rounds up in the last place
+        positions.fill(order, qty, 10000000000L);
+        positions.fill(order, qty, 10000000001L);
+        positions.fill(order, qty, 10000000001L);
+        PositionBook.Position position = positions.getPosition(0);
+        assertEquals(300000000020.0, position.getNotional(), 1e-3);
+        assertEquals(10000000001L, Fixed.price(position.getVWAP()));
+    }
+
+    private static Order order(double quantity) {
+        Order order = new Order();
+        order.setSymbol("IBM");
+        order.setSide('1');
+        order.setType('2');
+        order.setQuantity(quantity);
+        order.setOpen(quantity);
+        order.setStatus('0');
+        return order;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * File     : StateStoreTest.java
+ *
+ * Author   : Zoltan Feledy
+ *
+ * Contents : Round trip tests for the order records the StateStore and
+ *            the OrderIndex keep on disk.
+ *
+ */
+
+package org.fiximulator.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class StateStoreTest {
+
+    @Test
+    public void orderRecordKeepsEveryField() throws IOException {
+        Order order = order();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StateStore.writeOrder(new DataOutputStream(bytes), order);
+        Order read = StateStore.readOrder(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+        assertSame(order, read);
+    }
+
+    @Test
+    public void versionOneRecordsAreReadWithoutAnAccount()
+            throws IOException {
+        Order order = order();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        // the record as it was written before the account was added
+        StateStore.writeString(out, order.getID());
+        StateStore.writeString(out, order.getClientID());
+        StateStore.writeString(out, order.getOrigClientID());
+        StateStore.writeString(out, order.getSymbol());
+        StateStore.writeString(out, order.getSecurityID());
+        StateStore.writeString(out, order.getIdSource());
+        out.writeChar(order.getFIXSide());
+        out.writeChar(order.getFIXType());
+        out.writeChar(order.getFIXTif());
+        out.writeChar(order.getFIXStatus());
+        out.writeDouble(order.getQuantity());
+        out.writeDouble(order.getOpen());
+        out.writeDouble(order.getExecuted());
+        out.writeDouble(order.getLimit());
+        out.writeDouble(order.getAvgPx());
+        out.writeBoolean(order.isReceivedOrder());
+        out.writeBoolean(order.isReceivedCancel());
+        out.writeBoolean(order.isReceivedReplace());
+        out.writeBoolean(order.isRejectedCancelReplace());
+        Order read = StateStore.readOrder(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+        assertNull(read.getAccount());
+        order.setAccount(null);
+        assertSame(order, read);
+    }
+
+    @Test
+    public void restartRestoresTheAccount() throws IOException {
+        File directory = Files.createTempDirectory("state").toFile();
+        Order order = order();
+        StateStore store = new StateStore(directory, "20260101", 1000);
+        store.restore(new OrderSet(), new ExecutionSet());
+        store.record(order);
+        order.setExecuted(100);
+        order.setOpen(400);
+        store.record(order);
+        store.close();
+
+        OrderSet orders = new OrderSet();
+        store = new StateStore(directory, "20260101", 1000);
+        store.restore(orders, new ExecutionSet());
+        store.close();
+        assertEquals(1, orders.getCount());
+        assertSame(order, orders.getOrder(order.getID()));
+    }
+
+    @Test
+    public void orderIndexKeepsTheAccount() throws IOException {
+        File directory = Files.createTempDirectory("index").toFile();
+        Order order = order();
+        OrderIndex index = new OrderIndex(directory, "20260101");
+        index.put(order);
+        index.close();
+        index = new OrderIndex(directory, "20260101");
+        assertSame(order, index.get(order.getClientID()));
+        index.close();
+    }
+
+    private static Order order() {
+        Order order = new Order();
+        order.setClientID("C1");
+        order.setOrigClientID("C0");
+        order.setSymbol("IBM");
+        order.setSecurityID("459200101");
+        order.setIdSource("1");
+        order.setAccount("ACCT1");
+        order.setSide('1');
+        order.setType('2');
+        order.setTif('1');
+        order.setStatus('1');
+        order.setQuantity(500);
+        order.setOpen(450);
+        order.setExecuted(50);
+        order.setLimit(101.25);
+        order.setAvgPx(101.125);
+        order.setRejectedCancelReplace(true);
+        return order;
+    }
+
+    private static void assertSame(Order expected, Order actual) {
+        assertEquals(expected.getID(), actual.getID());
+        assertEquals(expected.getClientID(), actual.getClientID());
+        assertEquals(expected.getOrigClientID(), actual.getOrigClientID());
+        assertEquals(expected.getSymbol(), actual.getSymbol());
+        assertEquals(expected.getSecurityID(), actual.getSecurityID());
+        assertEquals(expected.getIdSource(), actual.getIdSource());
+        assertEquals(expected.getAccount(), actual.getAccount());
+        assertEquals(expected.getFIXSide(), actual.getFIXSide());
+        assertEquals(expected.getFIXType(), actual.getFIXType());
+        assertEquals(expected.getFIXTif(), actual.getFIXTif());
+        assertEquals(expected.getFIXStatus(), actual.getFIXStatus());
+        assertEquals(expected.getQuantity(), actual.getQuantity(), 0.0);
+        assertEquals(expected.getOpen(), actual.getOpen(), 0.0);
+        assertEquals(expected.getExecuted(), actual.getExecuted(), 0.0);
+        assertEquals(expected.getLimit(), actual.getLimit(), 0.0);
+        assertEquals(expected.getAvgPx(), actual.getAvgPx(), 0.0);
+        assertEquals(expected.isReceivedOrder(), actual.isReceivedOrder());
+        assertEquals(expected.isReceivedCancel(), actual.isReceivedCancel());
+        assertEquals(expected.isReceivedReplace(),
+                actual.isReceivedReplace());
+        assertEquals(expected.isRejectedCancelReplace(),
+                actual.isRejectedCancelReplace());
+    }
+}